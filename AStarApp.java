@@ -1,5 +1,11 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 
 
@@ -26,18 +32,59 @@ public class AStarApp {
     private Location finishLoc;
     
     /**
-     * This is a 2D array of UI components that provide display and manipulation
-     * of the cells in the map.
+     * Размер окна карты в точках, в который по возможности помещается вся
+     * карта: для больших карт ячейки рисуются мельче.
+     **/
+    private static final int MAX_VIEW_SIZE = 960;
+
+    /**
+     * Компонент, который показывает все ячейки карты и через который они
+     * изменяются.
      ***/
-    private JMapCell[][] mapCells;
+    private JMapCanvas canvas;
+
+    /**
+     * Карта, которая хранит текущее состояние ячеек и изменяется вместе с
+     * ними, поэтому перед поиском ее не нужно строить заново.  Поиск
+     * выполняется в фоновом потоке по снимку этой карты.
+     **/
+    private VersionedMap2D map;
+
+    /** The path currently shown on the map, or null. **/
+    private GridPath shownPath;
+
+    /** The search that is running in the background, or null. **/
+    private SwingWorker<GridPath, SearchBatch> searchWorker;
+
+    /** The number of the last search started, to drop stale batches. **/
+    private int searchNumber;
+
+    /** Показывать ли на карте открытые и закрытые ячейки поиска. **/
+    private JCheckBox showSearchBox;
+
+
+    /**
+     * Пачка ячеек, раскрытых и открытых поиском, которая передается из
+     * фонового потока в поток событий для показа на карте.
+     **/
+    private static class SearchBatch
+    {
+        final int[] expanded, opened;
+
+        SearchBatch(int[] expanded, int[] opened)
+        {
+            this.expanded = expanded;
+            this.opened = opened;
+        }
+    }
 
     
     /**
-     * Этот внутренний класс обрабатывает события мыши в основной сетке 
-     * ячеек карты, изменяя ячейки на основе состояния кнопки мыши и 
-     * выполненного первоначального редактирования.
+     * Этот внутренний класс обрабатывает события мыши на компоненте карты,
+     * изменяя ячейки на основе состояния кнопки мыши и выполненного
+     * первоначального редактирования.
      **/
-    private class MapCellHandler implements MouseListener
+    private class MapCellHandler extends MouseAdapter
     {
         /**
          * Это значение будет истинным, если была нажата кнопка мыши и 
@@ -51,53 +98,58 @@ public class AStarApp {
          * ячейки, в которой была запущена операция.
          **/
         private boolean makePassable;
+
+        /** The last cell modified by the current operation. **/
+        private Location lastCell;
         
         /** Initiates the modification operation. **/
         public void mousePressed(MouseEvent e)
         {
+            Location cell = canvas.getCellAt(e.getPoint());
+            if (cell == null)
+                return;
+
             modifying = true;
             
-            JMapCell cell = (JMapCell) e.getSource();
-            
             /**
              * Если текущая ячейка проходима, то мы делаем их непроходимыми; 
              * если она непроходима, то мы делаем их проходимыми.
              **/
             
-            makePassable = !cell.isPassable();
+            makePassable = !canvas.isPassable(cell.xCoord, cell.yCoord);
             
-            cell.setPassable(makePassable);
+            setPassable(cell.xCoord, cell.yCoord, makePassable);
+            lastCell = cell;
         }
 
         /** Ends the modification operation. **/
         public void mouseReleased(MouseEvent e)
         {
             modifying = false;
+            lastCell = null;
         }
         
         /**
-         * If the mouse has been pressed, this continues the modification
-         * operation into the new cell.
+         * Если кнопка мыши нажата, операция модификации продолжается до
+         * новой ячейки.  При быстром движении мыши события приходят не для
+         * каждой ячейки, поэтому изменяются все ячейки отрезка от
+         * предыдущей ячейки до новой.
          **/
-        public void mouseEntered(MouseEvent e)
+        public void mouseDragged(MouseEvent e)
         {
-            if (modifying)
-            {
-                JMapCell cell = (JMapCell) e.getSource();
-                cell.setPassable(makePassable);
-            }
-        }
+            if (!modifying)
+                return;
 
-        /** Not needed for this handler. **/
-        public void mouseExited(MouseEvent e)
-        {
-            // This one we ignore.
-        }
-        
-        /** Not needed for this handler. **/
-        public void mouseClicked(MouseEvent e)
-        {
-            // And this one too.
+            Location cell = canvas.getCellAt(e.getPoint());
+            if (cell == null || cell.equals(lastCell))
+                return;
+
+            if (lastCell == null)
+                setPassable(cell.xCoord, cell.yCoord, makePassable);
+            else
+                setLinePassable(lastCell, cell, makePassable);
+
+            lastCell = cell;
         }
     }
     
@@ -118,6 +170,24 @@ public class AStarApp {
         
         startLoc = new Location(2, h / 2);
         finishLoc = new Location(w - 3, h / 2);
+
+        map = new VersionedMap2D(w, h);
+        map.setStart(startLoc);
+        map.setFinish(finishLoc);
+    }
+
+    /**
+     * Creates a new instance of AStarApp that shows and edits a copy of the
+     * specified map, with its start and finish locations.
+     **/
+    public AStarApp(Map2D source)
+    {
+        width = source.getWidth();
+        height = source.getHeight();
+
+        map = new VersionedMap2D(source);
+        startLoc = map.getStart();
+        finishLoc = map.getFinish();
     }
     
     
@@ -133,53 +203,44 @@ public class AStarApp {
 
         contentPane.setLayout(new BorderLayout());
 
-        // Use GridBagLayout because it actually respects the preferred size
-        // specified by the components it lays out.
-        
-        GridBagLayout gbLayout = new GridBagLayout();
-        GridBagConstraints gbConstraints = new GridBagConstraints();
-        gbConstraints.fill = GridBagConstraints.BOTH;
-        gbConstraints.weightx = 1;
-        gbConstraints.weighty = 1;
-        gbConstraints.insets.set(0, 0, 1, 1);
-
-        JPanel mapPanel = new JPanel(gbLayout);
-        mapPanel.setBackground(Color.GRAY);
-        
-        mapCells = new JMapCell[width][height];
-        
-        MapCellHandler cellHandler = new MapCellHandler();
-        
-        for (int y = 0; y < height; y++)
-        {
-            for (int x = 0; x < width; x++)
-            {
-                mapCells[x][y] = new JMapCell();
+        // Вся карта рисуется одним компонентом.  Если она не помещается в
+        // окно даже с ячейками в одну точку, ее можно прокручивать.
 
-                gbConstraints.gridx = x;
-                gbConstraints.gridy = y;
+        int cellSize = Math.max(1, Math.min(JMapCanvas.DEFAULT_CELL_SIZE,
+                                            MAX_VIEW_SIZE / Math.max(width,
+                                                                     height)));
+        canvas = new JMapCanvas(width, height, cellSize);
+        canvas.setPassable(map);
 
-                gbLayout.setConstraints(mapCells[x][y], gbConstraints);
-                
-                mapPanel.add(mapCells[x][y]);
-                mapCells[x][y].addMouseListener(cellHandler);
-            }
-        }
+        MapCellHandler cellHandler = new MapCellHandler();
+        canvas.addMouseListener(cellHandler);
+        canvas.addMouseMotionListener(cellHandler);
+
+        JScrollPane scrollPane = new JScrollPane(canvas);
+        Dimension size = canvas.getPreferredSize();
+        scrollPane.getViewport().setPreferredSize(new Dimension(
+            Math.min(size.width, MAX_VIEW_SIZE),
+            Math.min(size.height, MAX_VIEW_SIZE)));
         
-        contentPane.add(mapPanel, BorderLayout.CENTER);
+        contentPane.add(scrollPane, BorderLayout.CENTER);
         
         JButton findPathButton = new JButton("Find Path");
         findPathButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) { findAndShowPath(); }
         });
         
-        contentPane.add(findPathButton, BorderLayout.SOUTH);
+        showSearchBox = new JCheckBox("Show Search");
+
+        JPanel buttonPanel = new JPanel(new FlowLayout());
+        buttonPanel.add(showSearchBox);
+        buttonPanel.add(findPathButton);
+        contentPane.add(buttonPanel, BorderLayout.SOUTH);
         
         frame.pack();
         frame.setVisible(true);
 
-        mapCells[startLoc.xCoord][startLoc.yCoord].setEndpoint(true);
-        mapCells[finishLoc.xCoord][finishLoc.yCoord].setEndpoint(true);
+        canvas.setEndpoint(startLoc.xCoord, startLoc.yCoord, true);
+        canvas.setEndpoint(finishLoc.xCoord, finishLoc.yCoord, true);
     }
 
     
@@ -193,56 +254,200 @@ public class AStarApp {
     
 
     /**
-     * Этот вспомогательный метод пытается вычислить путь, используя текущее 
-     * состояние карты.  Реализация довольно медленная; создается новый 
-     * объект {@link Map2D} и инициализируется из текущего состояния 
-     * приложения.  Затем вызывается навигатор A*, и если путь найден, 
-     * дисплей обновляется, чтобы показать путь, который был найден.  
-     * (Лучшим решением было бы использовать шаблон проектирования 
-     * контроллера представления модели.)
+     * Делает ячейку проходимой или непроходимой и сразу записывает
+     * изменение в карту, по которой выполняется поиск.
      **/
-    private void findAndShowPath()
+    private void setPassable(int x, int y, boolean pass)
     {
-        // Create a Map2D object containing the current state of the user input.
+        if (canvas.isPassable(x, y) == pass)
+            return;
 
-        Map2D map = new Map2D(width, height);
-        map.setStart(startLoc);
-        map.setFinish(finishLoc);
-        
-        for (int y = 0; y < height; y++)
+        canvas.setPassable(x, y, pass);
+        map.setCellValue(x, y, pass ? 0 : CellStorage.BLOCKED);
+    }
+
+    /**
+     * Делает проходимыми или непроходимыми ячейки отрезка между двумя
+     * ячейками по алгоритму Брезенхэма, кроме первой ячейки, которая уже
+     * изменена.
+     **/
+    private void setLinePassable(Location from, Location to, boolean pass)
+    {
+        int x = from.xCoord;
+        int y = from.yCoord;
+        int dx = Math.abs(to.xCoord - x);
+        int dy = -Math.abs(to.yCoord - y);
+        int sx = (x < to.xCoord) ? 1 : -1;
+        int sy = (y < to.yCoord) ? 1 : -1;
+        int err = dx + dy;
+
+        while (x != to.xCoord || y != to.yCoord)
         {
-            for (int x = 0; x < width; x++)
+            int e2 = 2 * err;
+            if (e2 >= dy)
             {
-                mapCells[x][y].setPath(false);
-
-                if (mapCells[x][y].isPassable())
-                    map.setCellValue(x, y, 0);
-                else
-                    map.setCellValue(x, y, Integer.MAX_VALUE);
+                err += dy;
+                x += sx;
+            }
+            if (e2 <= dx)
+            {
+                err += dx;
+                y += sy;
             }
+
+            setPassable(x, y, pass);
         }
-        
-        // Try to compute a path.  If one can be computed, mark all cells in the
-        // path.
-        
-        Waypoint wp = AStarPathfinder.computePath(map);
-        
-        while (wp != null)
+    }
+
+    /**
+     * Этот вспомогательный метод запускает поиск пути в фоновом потоке по
+     * снимку текущего состояния карты, поэтому интерфейс не ждет
+     * окончания поиска, и ячейки можно изменять, пока он выполняется.
+     * Когда поиск завершится, с карты убирается только предыдущий путь и
+     * показывается найденный.  Если за это время был запущен новый поиск,
+     * результат старого отбрасывается.
+     *
+     * Если отмечен флажок "Show Search", к поиску подключается слушатель,
+     * и открытые и закрытые ячейки появляются на карте по мере поиска.
+     * Пачки ячеек приходят не чаще 30 раз в секунду, а
+     * {@link SwingWorker} дополнительно объединяет их, если поток событий
+     * не успевает их показывать.
+     **/
+    private void findAndShowPath()
+    {
+        final Map2D snapshot = map.snapshot();
+        final boolean showSearch = showSearchBox.isSelected();
+        final int number = ++searchNumber;
+
+        canvas.clearSearch();
+
+        searchWorker = new SwingWorker<GridPath, SearchBatch>() {
+            protected GridPath doInBackground()
+            {
+                GridSearchState state = GridSearchState.forCurrentThread();
+                if (!showSearch)
+                    return findPath(state);
+
+                // Состояние закреплено за потоком, поэтому слушатель
+                // отключается сразу после поиска.
+                state.setSearchListener(new SearchListener() {
+                    public void searchStarted(Map2D map, int start, int goal)
+                    {
+                    }
+
+                    public void cellsExpanded(int[] expanded,
+                                              int expandedCount,
+                                              int[] opened, int openedCount)
+                    {
+                        publish(new SearchBatch(
+                            Arrays.copyOf(expanded, expandedCount),
+                            Arrays.copyOf(opened, openedCount)));
+                    }
+
+                    public void searchFinished(boolean found)
+                    {
+                    }
+                });
+
+                try
+                {
+                    return findPath(state);
+                }
+                finally
+                {
+                    state.setSearchListener(null);
+                }
+            }
+
+            private GridPath findPath(GridSearchState state)
+            {
+                return GridPathfinder.findPath(snapshot, snapshot.getStart(),
+                    snapshot.getFinish(), state);
+            }
+
+            protected void process(List<SearchBatch> batches)
+            {
+                // Пачки могут прийти и после done(), поэтому устаревший
+                // поиск узнается по номеру, а не по searchWorker.
+                if (number != searchNumber)
+                    return;
+
+                for (SearchBatch batch : batches)
+                {
+                    canvas.markSearch(batch.opened, batch.opened.length,
+                                      false);
+                    canvas.markSearch(batch.expanded, batch.expanded.length,
+                                      true);
+                }
+            }
+
+            protected void done()
+            {
+                if (searchWorker != this)
+                    return;
+
+                searchWorker = null;
+                try
+                {
+                    showPath(get());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (ExecutionException e)
+                {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        };
+
+        searchWorker.execute();
+    }
+
+    /**
+     * Убирает с карты ячейки предыдущего пути и отмечает ячейки нового
+     * пути, если он найден.
+     **/
+    private void showPath(GridPath path)
+    {
+        markPath(shownPath, false);
+        shownPath = path;
+        markPath(shownPath, true);
+    }
+
+    /** Sets the path flag of every cell of the path, if it is not null. **/
+    private void markPath(GridPath path, boolean onPath)
+    {
+        if (path == null)
+            return;
+
+        Iterator<Location> it = path.iterator();
+        while (it.hasNext())
         {
-            Location loc = wp.getLocation();
-            mapCells[loc.xCoord][loc.yCoord].setPath(true);
-            
-            wp = wp.getPrevious();
+            Location loc = it.next();
+            canvas.setPath(loc.xCoord, loc.yCoord, onPath);
         }
     }
     
     
     /**
-     * Entry-point for the application.  No command-line arguments are
-     * recognized at this time.
+     * Entry-point for the application.  The map size may be given as two
+     * command-line arguments, width and height; the default is 40x30.  A
+     * single argument names a map file to open with {@link MapLoader}.
      **/
-    public static void main(String[] args) {
-        AStarApp app = new AStarApp(40, 30);
+    public static void main(String[] args) throws IOException {
+        AStarApp app;
+        if (args.length == 1)
+            app = new AStarApp(MapLoader.load(new File(args[0])));
+        else if (args.length == 2)
+        {
+            app = new AStarApp(Integer.parseInt(args[0]),
+                               Integer.parseInt(args[1]));
+        }
+        else
+            app = new AStarApp(40, 30);
+
         app.start();
     }   
 }
\ No newline at end of file
@@ -27,13 +27,36 @@ public class AStarPathfinder
      **/
     public static Waypoint computePath(Map2D map)
     {
+        return computePath(map, MovementModel.EIGHT_CONNECTED);
+    }
+
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * карты с указанной моделью перемещения: модель задает допустимые
+     * шаги, их стоимости и эвристику, например
+     * {@link MovementModel#FOUR_CONNECTED}.
+     **/
+    public static Waypoint computePath(Map2D map, MovementModel model)
+    {
+        if (model == null)
+            throw new NullPointerException("model cannot be null");
+
+        // Если индекс связности карты показывает, что цель отрезана от
+        // начала, искать нечего.
+        Location s = map.getStart();
+        Location f = map.getFinish();
+        if (map.isDisconnected(s.yCoord * map.getWidth() + s.xCoord,
+                               f.yCoord * map.getWidth() + f.xCoord))
+            return null;
+
         // Variables necessary for the A* search.
         AStarState state = new AStarState(map);
         Location finishLoc = map.getFinish();
 
         // Установите начальную путевую точку, чтобы начать поиск A*.
         Waypoint start = new Waypoint(map.getStart(), null);
-        start.setCosts(0, estimateTravelCost(start.getLocation(), finishLoc));
+        start.setCosts(0, estimateTravelCost(model, start.getLocation(),
+                                             finishLoc));
         state.addOpenWaypoint(start);
 
         Waypoint finalWaypoint = null;
@@ -56,7 +79,7 @@ public class AStarPathfinder
              * местоположения. Это эквивалентно попытке выполнить все 
              * "следующие шаги" из этого местоположения.
              **/
-            takeNextStep(best, state);
+            takeNextStep(best, state, model);
             
             /** 
              * Наконец, переместите это местоположение из списка "открыто" 
@@ -68,81 +91,105 @@ public class AStarPathfinder
         return finalWaypoint;
     }
 
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * указанной карты, используя переданный контекст поиска.  Поиск
+     * выполняется над примитивными массивами контекста
+     * ({@link GridPathfinder}), поэтому повторные запросы по картам того
+     * же размера не создают объектов, кроме возвращаемой цепочки путевых
+     * точек.  Контекст можно получить вызовом
+     * {@link GridSearchState#forCurrentThread()}.
+     **/
+    public static Waypoint computePath(Map2D map, GridSearchState context)
+    {
+        return GridPathfinder.computePath(map, context);
+    }
+
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * карты взвешенным алгоритмом A*: оценка оставшейся стоимости
+     * умножается на <code>epsilon</code> (не меньше 1).  Поиск раскрывает
+     * меньше ячеек и быстрее находит путь, стоимость которого не больше
+     * чем в <code>epsilon</code> раз превышает оптимальную.  Если нужен
+     * путь, который улучшается, пока есть время, используйте
+     * {@link AnytimePathfinder}.
+     **/
+    public static Waypoint computePath(Map2D map, float epsilon,
+                                       GridSearchState context)
+    {
+        return GridPathfinder.computePath(map, map.getStart(),
+                                          map.getFinish(), context, epsilon);
+    }
+
     /**
      * Этот статический вспомогательный метод принимает путевую точку и 
      * генерирует все допустимые "следующие шаги" из этой путевой точки.  
      * Новые путевые точки добавляются в коллекцию "открытые путевые точки" 
      * переданного объекта A* state.
      **/
-    private static void takeNextStep(Waypoint currWP, AStarState state)
+    private static void takeNextStep(Waypoint currWP, AStarState state,
+                                     MovementModel model)
     {
         Location loc = currWP.getLocation();
         Map2D map = state.getMap();
         
-        for (int y = loc.yCoord - 1; y <= loc.yCoord + 1; y++)
+        // Шаги модели никогда не ведут в ту же ячейку, поэтому текущее
+        // местоположение не рассматривается как собственный сосед.
+        for (int d = 0; d < model.getStepCount(); d++)
         {
-            for (int x = loc.xCoord - 1; x <= loc.xCoord + 1; x++)
-            {
-                Location nextLoc = new Location(x, y);
-                
-                // If "next location" is outside the map, skip it.
-                if (!map.contains(nextLoc))
-                    continue;
-                
-                // If "next location" is this location, skip it.
-                if (nextLoc == loc)
-                    continue;
-                
-                // If this location happens to already be in the "closed" set
-                // then continue on with the next location.
-                if (state.isLocationClosed(nextLoc))
-                    continue;
+            Location nextLoc = new Location(loc.xCoord + model.getDX(d),
+                                            loc.yCoord + model.getDY(d));
+            
+            // If "next location" is outside the map, skip it.
+            if (!map.contains(nextLoc))
+                continue;
+            
+            // If this location happens to already be in the "closed" set
+            // then continue on with the next location.
+            if (state.isLocationClosed(nextLoc))
+                continue;
 
-                // Make a waypoint for this "next location."
-                
-                Waypoint nextWP = new Waypoint(nextLoc, currWP);
-                
-                /**
-                 * Хорошо, мы обманываем и используем смету затрат для 
-                 * вычисления фактической стоимости из предыдущей ячейки.  
-                 * Затем мы добавляем стоимость из ячейки карты, на которую 
-                 * мы наступаем, чтобы включить барьеры и т.д.
-                 **/
+            // Make a waypoint for this "next location."
+            
+            Waypoint nextWP = new Waypoint(nextLoc, currWP);
+            
+            /**
+             * Стоимость шага берется из таблицы модели перемещения.
+             * Затем мы добавляем стоимость из ячейки карты, на которую 
+             * мы наступаем, чтобы включить барьеры и т.д.
+             **/
 
-                float prevCost = currWP.getPreviousCost() +
-                    estimateTravelCost(currWP.getLocation(),
-                                       nextWP.getLocation());
+            float prevCost = currWP.getPreviousCost() +
+                model.getStepCost(d);
 
-                prevCost += map.getCellValue(nextLoc);
-                
-                // Skip this "next location" if it is too costly.
-                if (prevCost >= COST_LIMIT)
-                    continue;
-                
-                nextWP.setCosts(prevCost,
-                    estimateTravelCost(nextLoc, map.getFinish()));
+            prevCost += map.getCellValue(nextLoc);
+            
+            // Skip this "next location" if it is too costly.
+            if (prevCost >= COST_LIMIT)
+                continue;
+            
+            nextWP.setCosts(prevCost,
+                estimateTravelCost(model, nextLoc, map.getFinish()));
 
-                /**
-                 * Добавьте путевую точку в набор открытых путевых точек.  
-                 * Если для этого местоположения уже существует путевая точка, 
-                 * новая путевая точка заменяет старую путевую точку только 
-                 * в том случае, если она дешевле старой.
-                 **/
-                state.addOpenWaypoint(nextWP);
-            }
+            /**
+             * Добавьте путевую точку в набор открытых путевых точек.  
+             * Если для этого местоположения уже существует путевая точка, 
+             * новая путевая точка заменяет старую путевую точку только 
+             * в том случае, если она дешевле старой.
+             **/
+            state.addOpenWaypoint(nextWP);
         }
     }
     
     /**
-     * Оценивает стоимость проезда между двумя указанными точками. 
-     * Вычисленная фактическая стоимость - это просто расстояние по прямой 
-     * между двумя точками.
+     * Оценивает стоимость проезда между двумя указанными точками 
+     * эвристикой модели перемещения.  Для восьми соседей это октильное 
+     * расстояние, которое точнее расстояния по прямой и не требует корня.
      **/
-    private static float estimateTravelCost(Location currLoc, Location destLoc)
+    private static float estimateTravelCost(MovementModel model,
+                                            Location currLoc, Location destLoc)
     {
-        int dx = destLoc.xCoord - currLoc.xCoord;
-        int dy = destLoc.yCoord - currLoc.yCoord;
-        
-        return (float) Math.sqrt(dx * dx + dy * dy);
+        return model.estimate(currLoc.xCoord, currLoc.yCoord,
+                              destLoc.xCoord, destLoc.yCoord);
     }
 }
\ No newline at end of file
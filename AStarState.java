@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.HashMap;
 //import java.util.Map;
 /**
@@ -15,6 +16,16 @@ public class AStarState
     private HashMap<Location, Waypoint> openWaypoints = new HashMap<Location, Waypoint>(); //ключ-значение
     private HashMap<Location, Waypoint> closeWaypoints = new HashMap<Location, Waypoint>();
 
+    /**
+     * Двоичная куча открытых вершин, упорядоченная по общей стоимости
+     * {@link Waypoint#getTotalCost()}.  Каждая вершина помнит свою позицию
+     * в куче, поэтому замена и удаление выполняются за O(log n).
+     **/
+    private Waypoint[] openHeap = new Waypoint[64];
+
+    /** Количество вершин в куче открытых вершин. **/
+    private int openHeapSize;
+
 
      /** Инициализировать новый объект состояния для использования алгоритмом поиска пути A*. **/
     public AStarState(Map2D map)
@@ -33,23 +44,16 @@ public class AStarState
 
 
     /**
-     * Этот метод проверяет все вершины в наборе открытых вершин, 
-     * и после этого возваращет ссылку на вершину с наименьшей
-     * общей стоимостью. Если открытых путевых точек нет, этот метод возвращает null.
+     * Этот метод возвращает ссылку на вершину с наименьшей общей стоимостью
+     * из набора открытых вершин.  Вершина с наименьшей стоимостью всегда
+     * находится в корне кучи, поэтому вызов выполняется за O(1).
+     * Если открытых путевых точек нет, этот метод возвращает null.
      **/
     public Waypoint getMinOpenWaypoint() {
-        Waypoint minWaypoint = null;
-        Waypoint temp = null;
-        float minCost = Float.MAX_VALUE; // Лучшая цена по умолчанию устанавливается максимальное значение
-        //Находим минимальную цену пути, проходим по открытым точкам
-        for (int i = 0; i < openWaypoints.size(); i++) {
-            temp = (Waypoint) openWaypoints.values().toArray()[i];
-            if (temp.getTotalCost() < minCost) {
-                minCost = temp.getTotalCost();
-                minWaypoint = temp;
-            }
-        }
-        return minWaypoint;
+        if (openHeapSize == 0)
+            return null;
+
+        return openHeap[0];
     }
 
     /**
@@ -61,14 +65,34 @@ public class AStarState
      * локации, новая вершина добавляется только, если стоимость пути 
      * до новой вершины меньше стоимости пути до текущей.
      * Если путь через новую вершину короче, чем путь через текущую, 
-     * замените текущую вершину на новую.
+     * замените текущую вершину на новую.  Замена занимает место старой
+     * вершины в куче и поднимается вверх (decrease-key), что занимает
+     * O(log n).
      **/
     public boolean addOpenWaypoint(Waypoint newWP) {
         //Поиск точки в открытых точках.
         Waypoint newPoint = openWaypoints.get(newWP.getLocation());
-        //Если не найдена, то добавляем, или, если стоимость новой вершины меньше, то заменяем ее в списке открытых вершин
-        if (newPoint == null || newPoint.getPreviousCost() > newWP.getPreviousCost()) {
-            openWaypoints.put(newWP.getLocation(),newWP);
+        //Если не найдена, то добавляем в конец кучи и поднимаем вверх
+        if (newPoint == null) {
+            openWaypoints.put(newWP.getLocation(), newWP);
+            if (openHeapSize == openHeap.length)
+                openHeap = Arrays.copyOf(openHeap, openHeapSize * 2);
+
+            openHeap[openHeapSize] = newWP;
+            newWP.heapIndex = openHeapSize;
+            openHeapSize++;
+            siftUp(newWP.heapIndex);
+            return true;
+        }
+        //Если стоимость новой вершины меньше, то заменяем ее на месте старой
+        if (newPoint.getPreviousCost() > newWP.getPreviousCost()) {
+            openWaypoints.put(newWP.getLocation(), newWP);
+            int i = newPoint.heapIndex;
+            newPoint.heapIndex = -1;
+            openHeap[i] = newWP;
+            newWP.heapIndex = i;
+            siftUp(i);
+            siftDown(newWP.heapIndex);
             return true;
         }
         return false;
@@ -91,6 +115,7 @@ public class AStarState
         if (isPoint == null) return;
         //Удаляем вершину из открытых
         openWaypoints.remove(loc);
+        removeFromHeap(isPoint.heapIndex);
         //Добавляем вершину в закрытые
         closeWaypoints.put(loc,isPoint);
     }
@@ -103,4 +128,74 @@ public class AStarState
         return closeWaypoints.get(loc) != null;
     }
 
+    /**
+     * Удаляет из кучи вершину, находящуюся в позиции <code>i</code>.  На её
+     * место ставится последняя вершина кучи, которая затем опускается или
+     * поднимается до правильной позиции.
+     **/
+    private void removeFromHeap(int i) {
+        Waypoint removed = openHeap[i];
+        removed.heapIndex = -1;
+
+        openHeapSize--;
+        Waypoint last = openHeap[openHeapSize];
+        openHeap[openHeapSize] = null;
+
+        if (i == openHeapSize)
+            return;
+
+        openHeap[i] = last;
+        last.heapIndex = i;
+        siftUp(i);
+        siftDown(last.heapIndex);
+    }
+
+    /** Поднимает вершину в позиции <code>i</code> к корню кучи. **/
+    private void siftUp(int i) {
+        Waypoint wp = openHeap[i];
+        float cost = wp.getTotalCost();
+
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            Waypoint p = openHeap[parent];
+            if (p.getTotalCost() <= cost)
+                break;
+
+            openHeap[i] = p;
+            p.heapIndex = i;
+            i = parent;
+        }
+
+        openHeap[i] = wp;
+        wp.heapIndex = i;
+    }
+
+    /** Опускает вершину в позиции <code>i</code> к листьям кучи. **/
+    private void siftDown(int i) {
+        Waypoint wp = openHeap[i];
+        float cost = wp.getTotalCost();
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= openHeapSize)
+                break;
+
+            // Выбираем более дешевого из двух потомков.
+            if (child + 1 < openHeapSize &&
+                openHeap[child + 1].getTotalCost() < openHeap[child].getTotalCost())
+                child++;
+
+            Waypoint c = openHeap[child];
+            if (c.getTotalCost() >= cost)
+                break;
+
+            openHeap[i] = c;
+            c.heapIndex = i;
+            i = child;
+        }
+
+        openHeap[i] = wp;
+        wp.heapIndex = i;
+    }
+
 }
@@ -0,0 +1,393 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс реализует anytime-поиск пути ARA* (Anytime Repairing A*).
+ * Сначала выполняется взвешенный поиск A* с большим коэффициентом
+ * <code>epsilon</code>, который быстро находит путь с гарантированной
+ * границей неоптимальности.  Затем, пока не истек срок, коэффициент
+ * уменьшается, и поиск продолжается с сохраненными стоимостями: заново
+ * раскрываются только ячейки, стоимость которых улучшилась с прошлой
+ * итерации.  Возвращается лучший путь, найденный к сроку, а
+ * {@link #getSuboptimalityBound()} сообщает, во сколько раз его стоимость
+ * может превышать оптимальную.
+ *
+ * Первая итерация всегда выполняется до конца, даже если срок уже истек,
+ * чтобы поиск не сообщал "пути нет" при существующем пути; скорость первой
+ * итерации задается начальным коэффициентом.  Правила перемещения и
+ * стоимости совпадают с {@link AStarPathfinder}.  Объект хранит буферы
+ * между запросами и не является потокобезопасным.
+ **/
+public class AnytimePathfinder
+{
+    /** Начальный коэффициент эвристики по умолчанию. **/
+    public static final float DEFAULT_INITIAL_EPSILON = 3f;
+
+    /** Шаг уменьшения коэффициента по умолчанию. **/
+    public static final float DEFAULT_EPSILON_STEP = 0.5f;
+
+    /** Как часто (в раскрытых ячейках) проверяется срок. **/
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    /** Стоимость недостижимой ячейки. **/
+    private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+    /** Начальный коэффициент и шаг его уменьшения. **/
+    private float initialEpsilon, epsilonStep;
+
+    /** Стоимость лучшего найденного пути от начала до каждой ячейки. **/
+    private float[] g = new float[0];
+
+    /** Индекс предыдущей ячейки на лучшем найденном пути. **/
+    private int[] parent = new int[0];
+
+    /** Номер запроса, в котором ячейка была достигнута. **/
+    private int[] reached = new int[0];
+
+    /** Номер итерации, в которой ячейка была закрыта. **/
+    private int[] closed = new int[0];
+
+    /**
+     * Номер итерации, в которой ячейка попала в список несогласованных:
+     * закрытых ячеек, стоимость которых улучшилась после закрытия.
+     **/
+    private int[] inconsistent = new int[0];
+
+    /** Список несогласованных ячеек текущей итерации. **/
+    private int[] inconsList = new int[16];
+    private int inconsCount;
+
+    /** Буфер открытых ячеек при пересчете ключей. **/
+    private int[] rekeyBuffer = new int[16];
+
+    /** Открытый набор, упорядоченный по g + epsilon * h. **/
+    private IntMinHeap open = new IntMinHeap();
+
+    /** Номера текущего запроса и текущей итерации. **/
+    private int query, iteration;
+
+    /** Граница неоптимальности последнего возвращенного пути. **/
+    private float bound = UNREACHABLE;
+
+    /** Счетчики последнего запроса. **/
+    private int iterations, expansions;
+
+
+    /** Creates a pathfinder with the default epsilon schedule. **/
+    public AnytimePathfinder()
+    {
+        this(DEFAULT_INITIAL_EPSILON, DEFAULT_EPSILON_STEP);
+    }
+
+    /**
+     * Создает объект поиска, который начинает с коэффициента
+     * <code>initialEpsilon</code> и после каждой итерации уменьшает его на
+     * <code>epsilonStep</code>, пока он не станет равен 1.
+     **/
+    public AnytimePathfinder(float initialEpsilon, float epsilonStep)
+    {
+        if (!(initialEpsilon >= 1f))
+        {
+            throw new IllegalArgumentException(
+                "initialEpsilon must be at least 1; got " + initialEpsilon);
+        }
+
+        if (!(epsilonStep > 0f))
+        {
+            throw new IllegalArgumentException(
+                "epsilonStep must be positive; got " + epsilonStep);
+        }
+
+        this.initialEpsilon = initialEpsilon;
+        this.epsilonStep = epsilonStep;
+    }
+
+    /**
+     * Возвращает границу неоптимальности пути, возвращенного последним
+     * запросом: его стоимость не больше чем в это число раз превышает
+     * оптимальную.  Значение 1 означает, что путь оптимален.
+     **/
+    public float getSuboptimalityBound()
+    {
+        return bound;
+    }
+
+    /** Returns the number of finished iterations of the last query. **/
+    public int getIterations()
+    {
+        return iterations;
+    }
+
+    /** Returns the number of cells expanded by the last query. **/
+    public int getExpansions()
+    {
+        return expansions;
+    }
+
+    /**
+     * Ищет путь между начальным и конечным местоположениями карты в
+     * течение <code>timeoutMillis</code> миллисекунд.
+     **/
+    public Waypoint computePath(Map2D map, long timeoutMillis)
+    {
+        return computePath(map, map.getStart(), map.getFinish(),
+                           System.nanoTime() + timeoutMillis * 1000000L);
+    }
+
+    /**
+     * Ищет путь между двумя указанными местоположениями, улучшая его до
+     * момента <code>deadline</code> (значение {@link System#nanoTime()}).
+     * Возвращается последняя путевая точка лучшего найденного пути или
+     * <code>null</code>, если путь не существует.
+     **/
+    public Waypoint computePath(Map2D map, Location startLoc,
+                                Location finishLoc, long deadline)
+    {
+        int width = map.getWidth();
+        int start = GridPathfinder.cellIndex(map, startLoc);
+        int goal = GridPathfinder.cellIndex(map, finishLoc);
+
+        prepare(width * map.getHeight());
+        iterations = 0;
+        expansions = 0;
+        bound = UNREACHABLE;
+
+        if (map.isDisconnected(start, goal))
+            return null;
+
+        setReached(start, 0, -1);
+
+        float epsilon = initialEpsilon;
+        open.update(start, epsilon * heuristic(start, goal, width));
+
+        Waypoint best = null;
+        while (true)
+        {
+            boolean finished = improvePath(map, goal, epsilon,
+                                           iterations > 0, deadline);
+            if (!finished)
+                break;
+
+            iterations++;
+            if (!isReached(goal))
+                return null;
+
+            best = buildPath(width, start, goal);
+            float lower = lowerBound(goal, width);
+            bound = (lower > 0) ? Math.min(epsilon, g[goal] / lower) : 1f;
+            if (bound <= 1f || System.nanoTime() - deadline >= 0)
+                break;
+
+            // Следующая итерация: уменьшаем коэффициент, возвращаем
+            // несогласованные ячейки в открытый набор, пересчитываем ключи
+            // и очищаем закрытый набор.
+            epsilon = Math.max(1f, epsilon - epsilonStep);
+            iteration++;
+
+            for (int i = 0; i < inconsCount; i++)
+                open.update(inconsList[i], 0);
+            inconsCount = 0;
+
+            // Ключи меняют позиции элементов в куче, поэтому сначала
+            // скопируем открытые ячейки.
+            int n = open.size();
+            for (int i = 0; i < n; i++)
+                rekeyBuffer = appendCell(rekeyBuffer, i, open.get(i));
+
+            for (int i = 0; i < n; i++)
+            {
+                int c = rekeyBuffer[i];
+                open.update(c, g[c] + epsilon * heuristic(c, goal, width));
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Раскрывает ячейки с коэффициентом <code>epsilon</code>, пока ключ
+     * цели не станет наименьшим в открытом наборе.  Если
+     * <code>checkDeadline</code> равно true и наступил срок
+     * <code>deadline</code>, итерация прерывается и возвращается false.
+     **/
+    private boolean improvePath(Map2D map, int goal, float epsilon,
+                                boolean checkDeadline, long deadline)
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        while (!open.isEmpty() &&
+               (!isReached(goal) || open.peekKey() < g[goal]))
+        {
+            if (checkDeadline && (expansions % DEADLINE_CHECK_INTERVAL) == 0 &&
+                System.nanoTime() - deadline >= 0)
+                return false;
+
+            int curr = open.poll();
+            closed[curr] = iteration;
+            expansions++;
+
+            int currX = curr % width;
+            int currY = curr / width;
+            float currCost = g[curr];
+
+            for (int y = currY - 1; y <= currY + 1; y++)
+            {
+                if (y < 0 || y >= height)
+                    continue;
+
+                for (int x = currX - 1; x <= currX + 1; x++)
+                {
+                    if (x < 0 || x >= width || (x == currX && y == currY))
+                        continue;
+
+                    int next = y * width + x;
+                    float cost = currCost +
+                        ((x != currX && y != currY) ? GridPathfinder.DIAGONAL_COST
+                                                    : 1f);
+                    cost += map.getCellValueAt(next);
+
+                    if (cost >= AStarPathfinder.COST_LIMIT)
+                        continue;
+
+                    if (isReached(next) && g[next] <= cost)
+                        continue;
+
+                    setReached(next, cost, curr);
+
+                    if (closed[next] != iteration)
+                    {
+                        open.update(next, cost + epsilon *
+                            GridPathfinder.estimateTravelCost(x, y, goalX, goalY));
+                    }
+                    else if (inconsistent[next] != iteration)
+                    {
+                        inconsistent[next] = iteration;
+                        inconsList = appendCell(inconsList, inconsCount++, next);
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Возвращает нижнюю оценку стоимости оптимального пути: наименьшее
+     * значение g + h среди открытых и несогласованных ячеек, но не больше
+     * стоимости найденного пути.
+     **/
+    private float lowerBound(int goal, int width)
+    {
+        float min = g[goal];
+        for (int i = 0; i < open.size(); i++)
+        {
+            int c = open.get(i);
+            min = Math.min(min, g[c] + heuristic(c, goal, width));
+        }
+
+        for (int i = 0; i < inconsCount; i++)
+        {
+            int c = inconsList[i];
+            min = Math.min(min, g[c] + heuristic(c, goal, width));
+        }
+
+        return min;
+    }
+
+    /**
+     * Строит цепочку путевых точек от начала до цели по массиву
+     * <code>parent</code> и возвращает последнюю путевую точку.  Путь
+     * строится сразу после итерации, так как следующие итерации меняют
+     * ссылки на предыдущие ячейки.
+     **/
+    private Waypoint buildPath(int width, int start, int goal)
+    {
+        int length = 1;
+        for (int c = goal; c != start; c = parent[c])
+            length++;
+
+        int[] cells = new int[length];
+        int i = length;
+        for (int c = goal; i > 0; c = parent[c])
+            cells[--i] = c;
+
+        Waypoint wp = null;
+        for (i = 0; i < length; i++)
+        {
+            int x = cells[i] % width;
+            int y = cells[i] / width;
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(g[cells[i]], heuristic(cells[i], goal, width));
+        }
+
+        return wp;
+    }
+
+    /** Returns the straight-line distance from a cell to the goal. **/
+    private static float heuristic(int cell, int goal, int width)
+    {
+        return GridPathfinder.estimateTravelCost(cell % width, cell / width,
+                                                 goal % width, goal / width);
+    }
+
+    /** Stores a cell in the list, growing it when necessary. **/
+    private static int[] appendCell(int[] list, int i, int cell)
+    {
+        if (i == list.length)
+            list = Arrays.copyOf(list, list.length * 2);
+
+        list[i] = cell;
+        return list;
+    }
+
+    /** Returns true if the cell has been reached in the current query. **/
+    private boolean isReached(int cell)
+    {
+        return reached[cell] == query;
+    }
+
+    /** Records the cost and predecessor of a reached cell. **/
+    private void setReached(int cell, float cost, int prev)
+    {
+        reached[cell] = query;
+        g[cell] = cost;
+        parent[cell] = prev;
+    }
+
+    /**
+     * Готовит буферы к новому запросу: увеличивает их при необходимости
+     * и начинает новый номер запроса и итерации, так что старые отметки
+     * перестают действовать без очистки массивов.
+     **/
+    private void prepare(int cells)
+    {
+        if (cells > g.length)
+        {
+            g = new float[cells];
+            parent = new int[cells];
+            reached = new int[cells];
+            closed = new int[cells];
+            inconsistent = new int[cells];
+            open.ensureCapacity(cells);
+            query = 0;
+            iteration = 0;
+        }
+
+        query++;
+        iteration++;
+        if (query < 0 || iteration < 0)
+        {
+            Arrays.fill(reached, 0);
+            Arrays.fill(closed, 0);
+            Arrays.fill(inconsistent, 0);
+            query = 1;
+            iteration = 1;
+        }
+
+        open.clear();
+        inconsCount = 0;
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Этот класс решает пакет запросов на поиск пути по одной общей карте
+ * параллельно на всех ядрах процессора.  Запросы делятся между потоками
+ * {@link ForkJoinPool}; каждый поток использует свой
+ * {@link GridSearchState}, поэтому потоки не делят изменяемых данных и
+ * пропускная способность растет почти линейно с числом ядер.
+ *
+ * Карта во время пакетного поиска только читается: начало и конец берутся
+ * из запросов, а не из карты.  Изменять карту, пока выполняется пакет,
+ * нельзя.
+ **/
+public class BatchPathfinder
+{
+    /**
+     * Если в части пакета не больше запросов, чем это значение, она
+     * решается в одном потоке без дальнейшего деления.
+     **/
+    private static final int SEQUENTIAL_THRESHOLD = 4;
+
+
+    /**
+     * Решает все запросы пакета в общем пуле потоков и возвращает
+     * результаты в том же порядке, что и запросы.  Для запроса, для
+     * которого путь не найден, в списке находится <code>null</code>.
+     **/
+    public static List<Waypoint> computePaths(Map2D map,
+                                              List<PathQuery> queries)
+    {
+        return computePaths(map, queries, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Решает все запросы пакета в указанном пуле потоков и возвращает
+     * результаты в том же порядке, что и запросы.
+     **/
+    public static List<Waypoint> computePaths(Map2D map,
+                                              List<PathQuery> queries,
+                                              ForkJoinPool pool)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        PathQuery[] batch = queries.toArray(new PathQuery[queries.size()]);
+        Waypoint[] results = new Waypoint[batch.length];
+
+        pool.invoke(new BatchTask(map, batch, results, 0, batch.length));
+        return Arrays.asList(results);
+    }
+
+
+    /**
+     * Задача, которая решает запросы с индексами [from, to), деля диапазон
+     * пополам, пока он не станет достаточно маленьким.
+     **/
+    private static class BatchTask extends RecursiveAction
+    {
+        private final Map2D map;
+        private final PathQuery[] queries;
+        private final Waypoint[] results;
+        private final int from;
+        private final int to;
+
+        BatchTask(Map2D map, PathQuery[] queries, Waypoint[] results,
+                  int from, int to)
+        {
+            this.map = map;
+            this.queries = queries;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from <= SEQUENTIAL_THRESHOLD)
+            {
+                GridSearchState state = GridSearchState.forCurrentThread();
+                for (int i = from; i < to; i++)
+                {
+                    results[i] = GridPathfinder.computePath(map,
+                        queries[i].getStart(), queries[i].getFinish(), state);
+                }
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new BatchTask(map, queries, results, from, mid),
+                      new BatchTask(map, queries, results, mid, to));
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Этот класс содержит двунаправленную версию алгоритма поиска пути A*.
+ * Один поиск идет от начала карты к концу, другой - от конца к началу;
+ * каждый использует свой {@link GridSearchState}.  На длинных путях
+ * два фронта встречаются примерно посередине и раскрывают заметно меньше
+ * ячеек, чем односторонний поиск, а если одна из конечных точек отрезана
+ * от другой, поиск заканчивается, как только исчерпается меньшая из двух
+ * областей.
+ *
+ * Правила перемещения и стоимости совпадают с {@link AStarPathfinder}.
+ * Поиск останавливается, когда наименьшая общая стоимость в открытом
+ * наборе любого из направлений становится не меньше стоимости лучшего
+ * найденного пути через точку встречи; при согласованной эвристике
+ * (расстояние по прямой) найденный путь оптимален.
+ **/
+public class BidirectionalPathfinder
+{
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * указанной карты.  Для поиска создаются новые объекты состояния.
+     **/
+    public static Waypoint computePath(Map2D map)
+    {
+        return computePath(map, map.getStart(), map.getFinish(),
+                           new GridSearchState(), new GridSearchState());
+    }
+
+    /**
+     * Пытается вычислить путь между двумя указанными местоположениями,
+     * используя переданные объекты состояния для прямого и обратного
+     * поиска.  Если путь найден, возвращается путевая точка последнего
+     * шага пути; иначе возвращается <code>null</code>.
+     **/
+    public static Waypoint computePath(Map2D map, Location start,
+                                       Location finish,
+                                       GridSearchState forward,
+                                       GridSearchState backward)
+    {
+        if (forward == null || backward == null)
+            throw new NullPointerException("search states cannot be null");
+
+        if (forward == backward)
+        {
+            throw new IllegalArgumentException(
+                "forward and backward searches need separate states");
+        }
+
+        int width = map.getWidth();
+        int s = GridPathfinder.cellIndex(map, start);
+        int t = GridPathfinder.cellIndex(map, finish);
+
+        // Статистика записывается в объект прямого состояния и включает
+        // оба направления поиска.
+        SearchStats stats = forward.stats;
+        if (stats != null)
+            stats.beginSearch();
+
+        int meet = search(map, s, t, forward, backward);
+        if (stats != null)
+        {
+            stats.endSearch(forward.expansions + backward.expansions,
+                forward.pushes + backward.pushes,
+                forward.decreaseKeys + backward.decreaseKeys,
+                forward.peakOpenSize + backward.peakOpenSize, meet >= 0);
+        }
+
+        if (meet < 0)
+            return null;
+
+        // Соберем ячейки пути: от начала до точки встречи по прямому
+        // поиску, затем от точки встречи до конца по обратному.
+        int forwardLength = 0;
+        for (int c = meet; c != -1; c = forward.parent[c])
+            forwardLength++;
+
+        int length = forwardLength;
+        for (int c = meet; c != t; c = backward.parent[c])
+            length++;
+
+        int[] cells = forward.getPathBuffer(length);
+        int i = forwardLength;
+        for (int c = meet; i > 0; c = forward.parent[c])
+            cells[--i] = c;
+
+        i = forwardLength;
+        for (int c = meet; c != t; )
+        {
+            c = backward.parent[c];
+            cells[i++] = c;
+        }
+
+        int goalX = t % width;
+        int goalY = t / width;
+
+        Waypoint wp = null;
+        float cost = 0;
+        for (i = 0; i < length; i++)
+        {
+            int x = cells[i] % width;
+            int y = cells[i] / width;
+
+            if (i > 0)
+            {
+                int prev = cells[i - 1];
+                cost += (x != prev % width && y != prev / width)
+                    ? GridPathfinder.DIAGONAL_COST : 1f;
+                cost += map.getCellValueAt(cells[i]);
+            }
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(cost,
+                GridPathfinder.estimateTravelCost(x, y, goalX, goalY));
+        }
+
+        if (stats != null)
+            stats.endPath();
+
+        return wp;
+    }
+
+    /**
+     * Выполняет двунаправленный поиск между ячейками <code>s</code> и
+     * <code>t</code> и возвращает ячейку, в которой встретились фронты на
+     * лучшем пути, или -1, если путь не найден.  В прямом состоянии
+     * <code>parent</code> указывает в сторону начала, в обратном - в
+     * сторону конца.
+     **/
+    static int search(Map2D map, int s, int t, GridSearchState forward,
+                      GridSearchState backward)
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int sx = s % width;
+        int sy = s / width;
+        int tx = t % width;
+        int ty = t / width;
+
+        forward.reset(width * height);
+        backward.reset(width * height);
+
+        forward.setReached(s, 0, -1);
+        if (s == t)
+            return s;
+
+        // В конечную ячейку нельзя войти, если она непроходима.
+        if (map.getCellValueAt(t) >= AStarPathfinder.COST_LIMIT ||
+            map.isDisconnected(s, t))
+            return -1;
+
+        backward.setReached(t, 0, -1);
+        forward.open.update(s, GridPathfinder.estimateTravelCost(sx, sy, tx, ty));
+        backward.open.update(t, GridPathfinder.estimateTravelCost(tx, ty, sx, sy));
+
+        float best = Float.POSITIVE_INFINITY;
+        int meet = -1;
+
+        while (!forward.open.isEmpty() && !backward.open.isEmpty())
+        {
+            if (forward.open.peekKey() >= best ||
+                backward.open.peekKey() >= best)
+                break;
+
+            // Раскрываем сторону с меньшим фронтом, чтобы области поиска
+            // росли равномерно.
+            boolean fromStart = forward.open.size() <= backward.open.size();
+            GridSearchState own = fromStart ? forward : backward;
+            GridSearchState other = fromStart ? backward : forward;
+            int hx = fromStart ? tx : sx;
+            int hy = fromStart ? ty : sy;
+
+            int u = own.open.poll();
+            own.close(u);
+            own.expansions++;
+
+            int ux = u % width;
+            int uy = u / width;
+            float gu = own.g[u];
+            int uValue = map.getCellValueAt(u);
+
+            for (int y = uy - 1; y <= uy + 1; y++)
+            {
+                if (y < 0 || y >= height)
+                    continue;
+
+                for (int x = ux - 1; x <= ux + 1; x++)
+                {
+                    if (x < 0 || x >= width || (x == ux && y == uy))
+                        continue;
+
+                    int v = y * width + x;
+                    if (own.isClosed(v))
+                        continue;
+
+                    int vValue = map.getCellValueAt(v);
+
+                    // Прямой поиск входит в v; обратный идет по ребру v -> u,
+                    // которое входит в u.  В непроходимую ячейку можно только
+                    // начать путь, но не войти.
+                    if (fromStart ? vValue >= AStarPathfinder.COST_LIMIT
+                                  : (vValue >= AStarPathfinder.COST_LIMIT && v != s))
+                        continue;
+
+                    float cost = gu +
+                        ((x != ux && y != uy) ? GridPathfinder.DIAGONAL_COST : 1f);
+                    cost += fromStart ? vValue : uValue;
+
+                    if (cost >= AStarPathfinder.COST_LIMIT)
+                        continue;
+
+                    if (own.isReached(v) && own.g[v] <= cost)
+                        continue;
+
+                    own.setReached(v, cost, u);
+                    own.open.update(v, cost +
+                        GridPathfinder.estimateTravelCost(x, y, hx, hy));
+
+                    if (other.isReached(v) && cost + other.g[v] < best)
+                    {
+                        best = cost + other.g[v];
+                        meet = v;
+                    }
+                }
+            }
+        }
+
+        if (best >= AStarPathfinder.COST_LIMIT)
+            return -1;
+
+        return meet;
+    }
+}
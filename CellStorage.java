@@ -0,0 +1,204 @@
+/**
+ * Этот класс описывает хранилище значений стоимости ячеек для
+ * {@link Map2D}.  Ячейки хранятся построчно в одном непрерывном массиве:
+ * ячейка (x, y) имеет индекс <code>y * width + x</code>, поэтому соседи по
+ * строке лежат в памяти рядом.
+ *
+ * Значения могут храниться в 1, 2 или 4 байтах на ячейку.  В узких
+ * форматах допустимы неотрицательные значения до 254 (байт) или 65534
+ * (короткое целое); наибольший код формата зарезервирован для
+ * {@link #BLOCKED}, то есть непроходимой ячейки.
+ **/
+public abstract class CellStorage
+{
+    /** Значение стоимости, обозначающее непроходимую ячейку. **/
+    public static final int BLOCKED = Integer.MAX_VALUE;
+
+
+    /**
+     * Создает хранилище в памяти для указанного количества ячеек с
+     * указанной шириной ячейки в байтах (1, 2 или 4).  Все ячейки
+     * изначально имеют стоимость 0.
+     **/
+    public static CellStorage create(long cells, int cellWidth)
+    {
+        if (cells < 0 || cells > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException(
+                "in-memory storage is limited to " + (Integer.MAX_VALUE - 8) +
+                " cells; got " + cells);
+        }
+
+        switch (cellWidth)
+        {
+            case 1:
+                return new ByteArrayStorage((int) cells);
+
+            case 2:
+                return new ShortArrayStorage((int) cells);
+
+            case 4:
+                return new IntArrayStorage((int) cells);
+
+            default:
+                throw new IllegalArgumentException(
+                    "cellWidth must be 1, 2 or 4; got " + cellWidth);
+        }
+    }
+
+    /** Returns the number of bytes used to store each cell. **/
+    public abstract int getCellWidth();
+
+    /** Returns the cost value stored at the specified cell index. **/
+    public abstract int get(long index);
+
+    /** Stores the cost value at the specified cell index. **/
+    public abstract void set(long index, int value);
+
+    /**
+     * Копирует <code>length</code> значений, начиная с индекса ячейки
+     * <code>index</code>, в массив <code>dest</code>.
+     **/
+    public void get(long index, int[] dest, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+            dest[offset + i] = get(index + i);
+    }
+
+    /**
+     * Записывает <code>length</code> значений из массива <code>src</code>
+     * в ячейки, начиная с индекса <code>index</code>.
+     **/
+    public void set(long index, int[] src, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+            set(index + i, src[offset + i]);
+    }
+
+    /**
+     * Преобразует значение стоимости в код формата шириной
+     * <code>cellWidth</code> байт.  {@link #BLOCKED} кодируется наибольшим
+     * кодом формата; остальные значения должны помещаться в формат.
+     **/
+    static int encode(int value, int cellWidth)
+    {
+        if (cellWidth == 4)
+            return value;
+
+        int blocked = (cellWidth == 1) ? 0xFF : 0xFFFF;
+        if (value == BLOCKED)
+            return blocked;
+
+        if (value < 0 || value >= blocked)
+        {
+            throw new IllegalArgumentException("value must be in range [0, " +
+                blocked + ") or BLOCKED for " + cellWidth +
+                "-byte cells; got " + value);
+        }
+
+        return value;
+    }
+
+    /** Converts a stored code of the given width back into a cost value. **/
+    static int decode(int code, int cellWidth)
+    {
+        if (cellWidth == 1)
+            return (code == 0xFF) ? BLOCKED : code;
+
+        if (cellWidth == 2)
+            return (code == 0xFFFF) ? BLOCKED : code;
+
+        return code;
+    }
+
+
+    /** Хранилище с 4 байтами на ячейку. **/
+    static class IntArrayStorage extends CellStorage
+    {
+        private final int[] cells;
+
+        IntArrayStorage(int cells)
+        {
+            this.cells = new int[cells];
+        }
+
+        public int getCellWidth()
+        {
+            return 4;
+        }
+
+        public int get(long index)
+        {
+            return cells[(int) index];
+        }
+
+        public void set(long index, int value)
+        {
+            cells[(int) index] = value;
+        }
+
+        public void get(long index, int[] dest, int offset, int length)
+        {
+            System.arraycopy(cells, (int) index, dest, offset, length);
+        }
+
+        public void set(long index, int[] src, int offset, int length)
+        {
+            System.arraycopy(src, offset, cells, (int) index, length);
+        }
+    }
+
+
+    /** Хранилище с 2 байтами на ячейку. **/
+    static class ShortArrayStorage extends CellStorage
+    {
+        private final short[] cells;
+
+        ShortArrayStorage(int cells)
+        {
+            this.cells = new short[cells];
+        }
+
+        public int getCellWidth()
+        {
+            return 2;
+        }
+
+        public int get(long index)
+        {
+            return decode(cells[(int) index] & 0xFFFF, 2);
+        }
+
+        public void set(long index, int value)
+        {
+            cells[(int) index] = (short) encode(value, 2);
+        }
+    }
+
+
+    /** Хранилище с 1 байтом на ячейку. **/
+    static class ByteArrayStorage extends CellStorage
+    {
+        private final byte[] cells;
+
+        ByteArrayStorage(int cells)
+        {
+            this.cells = new byte[cells];
+        }
+
+        public int getCellWidth()
+        {
+            return 1;
+        }
+
+        public int get(long index)
+        {
+            return decode(cells[(int) index] & 0xFF, 1);
+        }
+
+        public void set(long index, int value)
+        {
+            cells[(int) index] = (byte) encode(value, 1);
+        }
+    }
+}
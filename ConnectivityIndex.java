@@ -0,0 +1,352 @@
+/**
+ * Этот класс хранит разметку связных компонент проходимых ячеек карты
+ * (система непересекающихся множеств, union-find), чтобы алгоритмы поиска
+ * могли за время O(1) отвечать "пути нет", не раскрывая ни одной ячейки.
+ * Без такой проверки поиск к отрезанной цели просматривает все ячейки,
+ * достижимые из начала, прежде чем вернуть <code>null</code>.
+ *
+ * Ячейка считается проходимой, если её стоимость меньше
+ * {@link AStarPathfinder#COST_LIMIT}; соседями считаются все восемь
+ * окружающих ячеек, так же как в {@link AStarPathfinder}.  Индекс
+ * обновляется при каждом изменении карты:
+ *
+ * <ul>
+ * <li>ячейка, ставшая проходимой, объединяется с проходимыми соседями;</li>
+ * <li>ячейка, ставшая непроходимой, остается в дереве множества как
+ *     "призрак", если её проходимые соседи связаны между собой в кольце
+ *     вокруг неё, то есть удаление ячейки не может разбить компоненту;</li>
+ * <li>в остальных случаях, а также после изменения большой области,
+ *     индекс помечается устаревшим и перестраивается целиком при
+ *     следующем запросе.</li>
+ * </ul>
+ *
+ * Индекс создается методом {@link Map2D#enableConnectivityIndex()} и
+ * занимает четыре байта на ячейку.  Ответ "связаны" не гарантирует, что
+ * путь будет найден (стоимость пути может превысить
+ * {@link AStarPathfinder#COST_LIMIT}), но ответ "не связаны" всегда точен.
+ **/
+public class ConnectivityIndex implements MapListener
+{
+    /**
+     * Области изменения большей площади не обрабатываются по ячейкам, а
+     * приводят к полной перестройке индекса.
+     **/
+    private static final int MAX_INCREMENTAL_AREA = 256;
+
+    /** Значение parent для непроходимой ячейки, не входящей в дерево. **/
+    private static final int NONE = -1;
+
+    /** Смещения восьми соседей ячейки по кругу, начиная с северного. **/
+    private static final int[] RING_DX = { 0, 1, 1, 1, 0, -1, -1, -1 };
+    private static final int[] RING_DY = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+    /** The map whose cells are labeled. **/
+    private final Map2D map;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * Родитель каждой ячейки в системе множеств.  У проходимой ячейки это
+     * неотрицательный индекс (у корня - она сама).  Непроходимая ячейка
+     * хранит {@link #NONE} или, если она осталась в дереве как призрак,
+     * значение <code>-(parent + 2)</code>.
+     **/
+    private final int[] parent;
+
+    /** True if the labeling must be rebuilt before the next query. **/
+    private boolean dirty = true;
+
+
+    /** Creates an index for the specified map; it is built on first use. **/
+    ConnectivityIndex(Map2D map)
+    {
+        if ((long) map.getWidth() * map.getHeight() > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("map has too many cells for " +
+                "a connectivity index: " + map.getWidth() + "x" +
+                map.getHeight());
+        }
+
+        this.map = map;
+        width = map.getWidth();
+        height = map.getHeight();
+        parent = new int[width * height];
+    }
+
+    /**
+     * Возвращает true, если из ячейки <code>start</code> можно дойти до
+     * ячейки <code>finish</code> по проходимым ячейкам.  Непроходимая
+     * начальная ячейка допускается (путь может начаться в ней), но в
+     * конечную ячейку нужно войти, поэтому она должна быть проходимой.
+     **/
+    public synchronized boolean isConnected(int start, int finish)
+    {
+        if (start == finish)
+            return true;
+
+        if (dirty)
+            rebuild();
+
+        if (parent[finish] < 0)
+            return false;
+
+        int root = find(finish);
+        if (parent[start] >= 0)
+            return find(start) == root;
+
+        // Путь из непроходимой ячейки сразу выходит в одного из соседей.
+        int sx = start % width;
+        int sy = start / width;
+        for (int i = 0; i < RING_DX.length; i++)
+        {
+            int n = neighbour(sx, sy, i);
+            if (n >= 0 && parent[n] >= 0 && find(n) == root)
+                return true;
+        }
+
+        return false;
+    }
+
+    /** Returns true if the locations are connected; see the int version. **/
+    public boolean isConnected(Location start, Location finish)
+    {
+        return isConnected(GridPathfinder.cellIndex(map, start),
+                           GridPathfinder.cellIndex(map, finish));
+    }
+
+    /** Updates the labeling after cells of the map changed. **/
+    public synchronized void mapChanged(Map2D map, int x, int y, int w, int h)
+    {
+        if (dirty)
+            return;
+
+        if ((long) w * h > MAX_INCREMENTAL_AREA)
+        {
+            dirty = true;
+            return;
+        }
+
+        for (int cy = y; cy < y + h && !dirty; cy++)
+        {
+            for (int cx = x; cx < x + w && !dirty; cx++)
+                cellChanged(cx, cy);
+        }
+    }
+
+    /**
+     * Приводит состояние одной ячейки в индексе в соответствие с картой.
+     * Соседи рассматриваются в том состоянии, которое записано в индексе,
+     * поэтому ячейки области можно обрабатывать по одной.
+     **/
+    private void cellChanged(int x, int y)
+    {
+        int c = y * width + x;
+        boolean passable =
+            map.getCellValueAt(c) < AStarPathfinder.COST_LIMIT;
+        int p = parent[c];
+
+        if (passable == (p >= 0))
+            return;
+
+        if (passable)
+        {
+            if (p == NONE)
+            {
+                parent[c] = c;
+                unionNeighbours(x, y, c);
+                return;
+            }
+
+            // Призрак по-прежнему входит в дерево своей старой компоненты.
+            // Это верно, только если он примыкает к этой компоненте.
+            int root = find(c);
+            boolean attached = false;
+            for (int i = 0; i < RING_DX.length && !attached; i++)
+            {
+                int n = neighbour(x, y, i);
+                attached = (n >= 0 && parent[n] >= 0 && find(n) == root);
+            }
+
+            if (!attached)
+            {
+                dirty = true;
+                return;
+            }
+
+            parent[c] = -(parent[c] + 2);
+            unionNeighbours(x, y, c);
+        }
+        else
+        {
+            if (!isRingConnected(x, y))
+            {
+                dirty = true;
+                return;
+            }
+
+            parent[c] = -(p + 2);
+        }
+    }
+
+    /**
+     * Возвращает true, если проходимые соседи ячейки (x, y) образуют не
+     * больше одной группы, связной в пределах кольца вокруг ячейки.  Тогда
+     * любой путь через эту ячейку можно обойти по кольцу, и её удаление не
+     * разбивает компоненту.
+     **/
+    private boolean isRingConnected(int x, int y)
+    {
+        // Идем по кольцу и считаем переходы от непроходимого соседа к
+        // проходимому.  Угловой сосед, который сам непроходим, не разрывает
+        // кольцо, если проходимы оба соседних с ним боковых соседа: они
+        // касаются друг друга по диагонали.
+        int open = 0;
+        for (int i = 0; i < RING_DX.length; i++)
+        {
+            int n = neighbour(x, y, i);
+            if (n >= 0 && parent[n] >= 0)
+                open |= 1 << i;
+        }
+
+        if (open == 0 || open == 0xFF)
+            return true;
+
+        int groups = 0;
+        for (int i = 0; i < RING_DX.length; i++)
+        {
+            if ((open & (1 << i)) == 0)
+                continue;
+
+            int prev = (i + 7) & 7;
+            boolean linked = (open & (1 << prev)) != 0;
+            if (!linked && (i & 1) == 0)
+                linked = (open & (1 << ((i + 6) & 7))) != 0;
+
+            if (!linked)
+                groups++;
+        }
+
+        return groups <= 1;
+    }
+
+    /** Unites the passable cell c at (x, y) with its passable neighbours. **/
+    private void unionNeighbours(int x, int y, int c)
+    {
+        for (int i = 0; i < RING_DX.length; i++)
+        {
+            int n = neighbour(x, y, i);
+            if (n >= 0 && parent[n] >= 0)
+                union(c, n);
+        }
+    }
+
+    /**
+     * Заново размечает все ячейки карты за один проход по строкам: каждая
+     * проходимая ячейка объединяется с уже просмотренными соседями слева и
+     * в предыдущей строке.
+     **/
+    private void rebuild()
+    {
+        int[] prevRow = new int[width];
+        int[] row = new int[width];
+
+        for (int y = 0; y < height; y++)
+        {
+            map.getRow(y, row, 0);
+            int base = y * width;
+
+            for (int x = 0; x < width; x++)
+            {
+                int c = base + x;
+                if (row[x] >= AStarPathfinder.COST_LIMIT)
+                {
+                    parent[c] = NONE;
+                    continue;
+                }
+
+                parent[c] = c;
+                if (x > 0 && row[x - 1] < AStarPathfinder.COST_LIMIT)
+                    union(c, c - 1);
+
+                if (y > 0)
+                {
+                    for (int nx = x - 1; nx <= x + 1; nx++)
+                    {
+                        if (nx >= 0 && nx < width &&
+                            prevRow[nx] < AStarPathfinder.COST_LIMIT)
+                            union(c, c - width + nx - x);
+                    }
+                }
+            }
+
+            int[] t = prevRow;
+            prevRow = row;
+            row = t;
+        }
+
+        dirty = false;
+    }
+
+    /**
+     * Returns the index of the i-th ring neighbour of (x, y), or -1 if it is
+     * outside the map.
+     **/
+    private int neighbour(int x, int y, int i)
+    {
+        int nx = x + RING_DX[i];
+        int ny = y + RING_DY[i];
+        if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+            return -1;
+
+        return ny * width + nx;
+    }
+
+    /** Returns the parent link of a cell, decoding ghost cells. **/
+    private int next(int c)
+    {
+        int p = parent[c];
+        return (p >= 0) ? p : -(p + 2);
+    }
+
+    /**
+     * Возвращает корень множества, в которое входит ячейка, сокращая путь
+     * вдвое по дороге (каждая ячейка начинает указывать на деда).
+     **/
+    private int find(int c)
+    {
+        int p = next(c);
+        while (p != c)
+        {
+            int gp = next(p);
+            parent[c] = (parent[c] >= 0) ? gp : -(gp + 2);
+            c = gp;
+            p = next(c);
+        }
+
+        return c;
+    }
+
+    /** Unites the sets that contain cells a and b. **/
+    private void union(int a, int b)
+    {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb)
+            return;
+
+        // Корень с меньшим индексом становится общим, чтобы деревья не
+        // вырождались в длинные цепочки при построчной разметке.
+        if (ra < rb)
+            setParent(rb, ra);
+        else
+            setParent(ra, rb);
+    }
+
+    /** Links root r under p, keeping the ghost encoding of r. **/
+    private void setParent(int r, int p)
+    {
+        parent[r] = (parent[r] >= 0) ? p : -(p + 2);
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * Хранилище ячеек карты, разбитое на плитки по {@link #TILE_CELLS} ячеек
+ * построчного массива, которое умеет выпускать неизменяемые снимки.
+ * Снимок разделяет плитки с хранилищем: изменение ячейки после выпуска
+ * снимка копирует только плитку, в которой лежит ячейка, а остальные
+ * плитки остаются общими для всех снимков.
+ *
+ * Изменять хранилище может только один поток одновременно; снимки можно
+ * читать из любых потоков без блокировок, так как их плитки больше
+ * никогда не изменяются.
+ **/
+class CopyOnWriteCellStorage extends CellStorage
+{
+    /** Число бит в индексе ячейки внутри плитки. **/
+    static final int TILE_SHIFT = 12;
+
+    /** Количество ячеек в одной плитке. **/
+    static final int TILE_CELLS = 1 << TILE_SHIFT;
+
+    /** Маска индекса ячейки внутри плитки. **/
+    private static final int TILE_MASK = TILE_CELLS - 1;
+
+    /** Текущие плитки хранилища. **/
+    private int[][] tiles;
+
+    /**
+     * True для плиток, скопированных после выпуска последнего снимка:
+     * их можно изменять на месте.
+     **/
+    private boolean[] owned;
+
+
+    /** Creates storage for the specified number of cells, all 0. **/
+    CopyOnWriteCellStorage(int cells)
+    {
+        int count = (cells + TILE_CELLS - 1) >>> TILE_SHIFT;
+        tiles = new int[count][];
+        owned = new boolean[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            tiles[i] = new int[Math.min(TILE_CELLS, cells - (i << TILE_SHIFT))];
+            owned[i] = true;
+        }
+    }
+
+    public int getCellWidth()
+    {
+        return 4;
+    }
+
+    public int get(long index)
+    {
+        return tiles[(int) (index >>> TILE_SHIFT)][(int) index & TILE_MASK];
+    }
+
+    public void set(long index, int value)
+    {
+        writableTile((int) (index >>> TILE_SHIFT))[(int) index & TILE_MASK] =
+            value;
+    }
+
+    public void get(long index, int[] dest, int offset, int length)
+    {
+        copyOut(tiles, index, dest, offset, length);
+    }
+
+    public void set(long index, int[] src, int offset, int length)
+    {
+        while (length > 0)
+        {
+            int t = (int) (index >>> TILE_SHIFT);
+            int pos = (int) index & TILE_MASK;
+            int n = Math.min(length, TILE_CELLS - pos);
+
+            System.arraycopy(src, offset, writableTile(t), pos, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Выпускает неизменяемый снимок текущих значений.  Все плитки
+     * становятся общими со снимком, поэтому следующее изменение каждой из
+     * них сначала ее скопирует.
+     **/
+    CellStorage snapshot()
+    {
+        Arrays.fill(owned, false);
+        return new Snapshot(tiles.clone());
+    }
+
+    /** Returns the tile, copying it first if a snapshot shares it. **/
+    private int[] writableTile(int t)
+    {
+        if (!owned[t])
+        {
+            tiles[t] = tiles[t].clone();
+            owned[t] = true;
+        }
+
+        return tiles[t];
+    }
+
+    /** Copies <code>length</code> values starting at a cell index. **/
+    private static void copyOut(int[][] tiles, long index, int[] dest,
+                                int offset, int length)
+    {
+        while (length > 0)
+        {
+            int pos = (int) index & TILE_MASK;
+            int n = Math.min(length, TILE_CELLS - pos);
+
+            System.arraycopy(tiles[(int) (index >>> TILE_SHIFT)], pos, dest,
+                             offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+
+    /** Неизменяемый снимок: плитки только читаются. **/
+    static class Snapshot extends CellStorage
+    {
+        private final int[][] tiles;
+
+        Snapshot(int[][] tiles)
+        {
+            this.tiles = tiles;
+        }
+
+        public int getCellWidth()
+        {
+            return 4;
+        }
+
+        public int get(long index)
+        {
+            return tiles[(int) (index >>> TILE_SHIFT)][(int) index & TILE_MASK];
+        }
+
+        public void set(long index, int value)
+        {
+            throw new UnsupportedOperationException("map snapshot is read-only");
+        }
+
+        public void get(long index, int[] dest, int offset, int length)
+        {
+            copyOut(tiles, index, dest, offset, length);
+        }
+
+        public void set(long index, int[] src, int offset, int length)
+        {
+            throw new UnsupportedOperationException("map snapshot is read-only");
+        }
+    }
+}
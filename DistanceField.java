@@ -0,0 +1,510 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Этот класс вычисляет поле стоимостей до одной цели: для каждой ячейки
+ * карты - стоимость самого дешевого пути от нее до цели (обычно
+ * {@link Map2D#getFinish()}), и поле направлений: шаг модели перемещения,
+ * с которого начинается этот путь.  Когда к одной цели движется много
+ * агентов, поле вычисляется один раз, и каждый агент выбирает следующий
+ * шаг за время O(1), вместо того чтобы искать свой путь.
+ *
+ * Стоимости вычисляются обратным алгоритмом Дейкстры от цели с теми же
+ * правилами, что и в {@link GridPathfinder}, поэтому стоимость в поле
+ * совпадает со стоимостью пути, найденного поиском A*, с точностью до
+ * округления: слагаемые складываются от цели, а не от начала.  Карта
+ * делится на горизонтальные полосы, которые обрабатываются параллельно в
+ * пуле {@link ForkJoinPool}: каждая полоса распространяет фронт волны
+ * внутри себя, затем полосы обмениваются стоимостями граничных строк, и
+ * так до тех пор, пока стоимости не перестанут уменьшаться.
+ *
+ * Поле соответствует карте в момент вычисления; после изменения
+ * стоимостей ячеек ({@link #isStale()}) его нужно вычислить заново.
+ * Методы чтения поля можно вызывать из разных потоков.
+ **/
+public class DistanceField
+{
+    /** Направление ячейки, из которой цель недостижима, и самой цели. **/
+    public static final int NO_DIRECTION = -1;
+
+    /** Наименьшая высота полосы в строках. **/
+    private static final int MIN_STRIPE_ROWS = 32;
+
+    /** Стоимость ячейки, из которой цель недостижима. **/
+    private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+    /** Карта, по которой вычислено поле. **/
+    private final Map2D map;
+
+    /** Версия карты, по которой вычислено поле. **/
+    private final long mapVersion;
+
+    /** Размеры карты. **/
+    private final int width, height;
+
+    /** Индекс ячейки цели. **/
+    private final int target;
+
+    /** Модель перемещения, по шагам которой вычислено поле. **/
+    private final MovementModel model;
+
+    /** Стоимость пути от каждой ячейки до цели. **/
+    private final float[] cost;
+
+    /** Номер первого шага пути от каждой ячейки, или -1. **/
+    private final byte[] direction;
+
+
+    /** Creates an empty field; the arrays are filled by compute(). **/
+    private DistanceField(Map2D map, int target, MovementModel model)
+    {
+        this.map = map;
+        this.mapVersion = map.getVersion();
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.target = target;
+        this.model = model;
+
+        cost = new float[width * height];
+        direction = new byte[width * height];
+    }
+
+    /**
+     * Вычисляет поле до конечного местоположения карты при перемещении к
+     * восьми соседям в общем пуле потоков.
+     **/
+    public static DistanceField compute(Map2D map)
+    {
+        return compute(map, map.getFinish(), MovementModel.EIGHT_CONNECTED,
+                       ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Вычисляет поле до указанной цели при указанной модели перемещения,
+     * распределяя полосы карты между потоками указанного пула.
+     **/
+    public static DistanceField compute(Map2D map, Location target,
+                                        MovementModel model, ForkJoinPool pool)
+    {
+        if (model == null)
+            throw new NullPointerException("model cannot be null");
+
+        if (pool == null)
+            throw new NullPointerException("pool cannot be null");
+
+        DistanceField field = new DistanceField(map,
+            GridPathfinder.cellIndex(map, target), model);
+
+        int stripeCount = Math.max(1, Math.min(pool.getParallelism(),
+            field.height / MIN_STRIPE_ROWS));
+        Stripe[] stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+        {
+            stripes[i] = field.new Stripe(
+                (int) ((long) field.height * i / stripeCount),
+                (int) ((long) field.height * (i + 1) / stripeCount));
+        }
+
+        Arrays.fill(field.cost, UNREACHABLE);
+        field.cost[field.target] = 0;
+        stripes[field.stripeOf(stripes, field.target)].push(field.target, 0);
+
+        // Полосы по очереди распространяют стоимости внутри себя и
+        // принимают улучшения от соседних полос.  Обмен только читает
+        // стоимости, поэтому фазы можно выполнять параллельно.
+        do
+        {
+            pool.invoke(new StripeTask(stripes, 0, stripeCount,
+                                       StripeTask.PROPAGATE));
+            pool.invoke(new StripeTask(stripes, 0, stripeCount,
+                                       StripeTask.EXCHANGE));
+        }
+        while (anyPending(stripes));
+
+        pool.invoke(new StripeTask(stripes, 0, stripeCount,
+                                   StripeTask.DIRECTIONS));
+        return field;
+    }
+
+    /** Returns the map the field was computed for. **/
+    public Map2D getMap()
+    {
+        return map;
+    }
+
+    /** Returns the target of the field. **/
+    public Location getTarget()
+    {
+        return new Location(target % width, target / width);
+    }
+
+    /** Returns the movement model whose steps the directions refer to. **/
+    public MovementModel getMovementModel()
+    {
+        return model;
+    }
+
+    /**
+     * Возвращает true, если стоимости ячеек карты изменились после
+     * вычисления поля.
+     **/
+    public boolean isStale()
+    {
+        return map.getVersion() != mapVersion;
+    }
+
+    /**
+     * Возвращает стоимость пути от ячейки (x, y) до цели или
+     * <code>Float.POSITIVE_INFINITY</code>, если цель недостижима.
+     **/
+    public float getCost(int x, int y)
+    {
+        checkCell(x, y);
+        return cost[y * width + x];
+    }
+
+    /**
+     * Копирует стоимости всех ячеек, построчно, в массив
+     * <code>dest</code>, начиная с индекса <code>offset</code>.
+     **/
+    public void getCosts(float[] dest, int offset)
+    {
+        System.arraycopy(cost, 0, dest, offset, cost.length);
+    }
+
+    /**
+     * Возвращает номер шага модели перемещения, с которого начинается
+     * самый дешевый путь от ячейки (x, y) до цели, или
+     * {@link #NO_DIRECTION}, если ячейка - сама цель или цель из нее
+     * недостижима.
+     **/
+    public int getDirection(int x, int y)
+    {
+        checkCell(x, y);
+        return direction[y * width + x];
+    }
+
+    /**
+     * Возвращает следующую ячейку пути от указанного местоположения к
+     * цели или <code>null</code>, если следующей ячейки нет.
+     **/
+    public Location getNext(Location loc)
+    {
+        int d = getDirection(loc.xCoord, loc.yCoord);
+        if (d == NO_DIRECTION)
+            return null;
+
+        return new Location(loc.xCoord + model.getDX(d),
+                            loc.yCoord + model.getDY(d));
+    }
+
+    /**
+     * Строит путь от указанного местоположения до цели по полю
+     * направлений и возвращает его последнюю путевую точку, так же как
+     * {@link GridPathfinder#computePath}, или <code>null</code>, если цель
+     * недостижима.
+     **/
+    public Waypoint getPath(Location start)
+    {
+        int c = GridPathfinder.cellIndex(map, start);
+        if (cost[c] == UNREACHABLE)
+            return null;
+
+        Waypoint wp = new Waypoint(new Location(c % width, c / width), null);
+        wp.setCosts(0, cost[c]);
+
+        float g = 0;
+        while (c != target)
+        {
+            int d = direction[c];
+            int x = c % width + model.getDX(d);
+            int y = c / width + model.getDY(d);
+            c = y * width + x;
+
+            // Тот же порядок сложения, что и при поиске.
+            g += model.getStepCost(d);
+            g += map.getCellValueAt(c);
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(g, cost[c]);
+        }
+
+        return wp;
+    }
+
+    /** Throws an exception if (x, y) is outside the map. **/
+    private void checkCell(int x, int y)
+    {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+        {
+            throw new IllegalArgumentException("location (" + x + ", " + y +
+                ") is outside the map");
+        }
+    }
+
+    /** Returns the index of the stripe that contains the cell. **/
+    private int stripeOf(Stripe[] stripes, int cell)
+    {
+        int y = cell / width;
+        int i = 0;
+        while (y >= stripes[i].y1)
+            i++;
+
+        return i;
+    }
+
+    /** Returns true if some stripe received improved boundary costs. **/
+    private static boolean anyPending(Stripe[] stripes)
+    {
+        for (int i = 0; i < stripes.length; i++)
+        {
+            if (stripes[i].pending)
+                return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Горизонтальная полоса строк [y0, y1) со своей кучей открытых ячеек.
+     * Полоса изменяет стоимости только своих ячеек.  В полосе не меньше
+     * {@link #MIN_STRIPE_ROWS} строк, поэтому ее верхняя и нижняя
+     * граничные строки различны.
+     **/
+    private class Stripe
+    {
+        /** The first row and the row after the last one. **/
+        final int y0, y1;
+
+        /** Открытые ячейки полосы по индексу относительно ее начала. **/
+        final IntMinHeap open;
+
+        /**
+         * Стоимости, полученные граничными строками от соседних полос:
+         * первые width значений - для строки y0, следующие - для y1 - 1.
+         **/
+        final float[] incoming;
+
+        /** True, если при обмене граничные строки получили улучшения. **/
+        boolean pending;
+
+        Stripe(int y0, int y1)
+        {
+            this.y0 = y0;
+            this.y1 = y1;
+            open = new IntMinHeap((y1 - y0) * width);
+            incoming = new float[2 * width];
+        }
+
+        /** Sets the cost of a cell of this stripe and opens it. **/
+        void push(int cell, float c)
+        {
+            open.update(cell - y0 * width, c);
+        }
+
+        /**
+         * Принимает улучшения от соседних полос и распространяет стоимости
+         * внутри полосы обратным алгоритмом Дейкстры.
+         **/
+        void propagate()
+        {
+            if (pending)
+            {
+                if (y0 > 0)
+                    acceptRow(y0, 0);
+
+                if (y1 < height)
+                    acceptRow(y1 - 1, width);
+
+                pending = false;
+            }
+
+            int base = y0 * width;
+            int steps = model.getStepCount();
+
+            while (!open.isEmpty())
+            {
+                int curr = base + open.poll();
+                int currX = curr % width;
+                int currY = curr / width;
+
+                // Шаг из соседней ячейки в curr стоит длину шага плюс
+                // стоимость curr.
+                float currCost = cost[curr];
+                int value = map.getCellValueAt(curr);
+
+                for (int d = 0; d < steps; d++)
+                {
+                    int x = currX - model.getDX(d);
+                    int y = currY - model.getDY(d);
+                    if (x < 0 || x >= width || y < y0 || y >= y1)
+                        continue;
+
+                    int prev = y * width + x;
+                    float c = currCost + model.getStepCost(d);
+                    c += value;
+
+                    if (c >= AStarPathfinder.COST_LIMIT || c >= cost[prev])
+                        continue;
+
+                    cost[prev] = c;
+                    open.update(prev - base, c);
+                }
+            }
+        }
+
+        /** Opens the cells of row y whose incoming cost is an improvement. **/
+        private void acceptRow(int y, int slot)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int cell = y * width + x;
+                float c = incoming[slot + x];
+                if (c < cost[cell])
+                {
+                    cost[cell] = c;
+                    push(cell, c);
+                }
+            }
+        }
+
+        /**
+         * Вычисляет для граничных строк полосы стоимости путей, первый шаг
+         * которых ведет в соседнюю полосу, и отмечает полосу, если
+         * какая-нибудь из них меньше текущей.
+         **/
+        void exchange()
+        {
+            pending = false;
+            if (y0 > 0)
+                pending |= gatherRow(y0, 0);
+
+            if (y1 < height)
+                pending |= gatherRow(y1 - 1, width);
+        }
+
+        /**
+         * Stores in the slot the costs of row y through cells outside the
+         * stripe and returns true if any of them is an improvement.
+         **/
+        private boolean gatherRow(int y, int slot)
+        {
+            boolean improved = false;
+            int steps = model.getStepCount();
+
+            for (int x = 0; x < width; x++)
+            {
+                int cell = y * width + x;
+                float best = cost[cell];
+
+                for (int d = 0; d < steps; d++)
+                {
+                    int nx = x + model.getDX(d);
+                    int ny = y + model.getDY(d);
+                    if (nx < 0 || nx >= width || ny < 0 || ny >= height ||
+                        (ny >= y0 && ny < y1))
+                        continue;
+
+                    int next = ny * width + nx;
+                    float c = cost[next] + model.getStepCost(d);
+                    c += map.getCellValueAt(next);
+
+                    if (c < best && c < AStarPathfinder.COST_LIMIT)
+                        best = c;
+                }
+
+                incoming[slot + x] = best;
+                if (best < cost[cell])
+                    improved = true;
+            }
+
+            return improved;
+        }
+
+        /**
+         * Выбирает для каждой ячейки полосы шаг к соседу, через которого
+         * проходит самый дешевый путь до цели.
+         **/
+        void computeDirections()
+        {
+            int steps = model.getStepCount();
+            for (int y = y0; y < y1; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    int cell = y * width + x;
+                    int bestDir = NO_DIRECTION;
+
+                    if (cell != target && cost[cell] != UNREACHABLE)
+                    {
+                        float best = UNREACHABLE;
+                        for (int d = 0; d < steps; d++)
+                        {
+                            int nx = x + model.getDX(d);
+                            int ny = y + model.getDY(d);
+                            if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                                continue;
+
+                            int next = ny * width + nx;
+                            float c = cost[next] + model.getStepCost(d);
+                            c += map.getCellValueAt(next);
+
+                            if (c < best)
+                            {
+                                best = c;
+                                bestDir = d;
+                            }
+                        }
+                    }
+
+                    direction[cell] = (byte) bestDir;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Задача, которая выполняет одну фазу вычисления для полос с
+     * индексами [from, to), деля диапазон пополам.
+     **/
+    private static class StripeTask extends RecursiveAction
+    {
+        /** Фазы вычисления. **/
+        static final int PROPAGATE = 0, EXCHANGE = 1, DIRECTIONS = 2;
+
+        private final Stripe[] stripes;
+        private final int from;
+        private final int to;
+        private final int phase;
+
+        StripeTask(Stripe[] stripes, int from, int to, int phase)
+        {
+            this.stripes = stripes;
+            this.from = from;
+            this.to = to;
+            this.phase = phase;
+        }
+
+        protected void compute()
+        {
+            if (to - from == 1)
+            {
+                Stripe s = stripes[from];
+                if (phase == PROPAGATE)
+                    s.propagate();
+                else if (phase == EXCHANGE)
+                    s.exchange();
+                else
+                    s.computeDirections();
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new StripeTask(stripes, from, mid, phase),
+                      new StripeTask(stripes, mid, to, phase));
+        }
+    }
+}
@@ -0,0 +1,308 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Этот класс представляет собой компактный неизменяемый путь по карте.
+ * Вместо цепочки объектов {@link Waypoint} (около 60 байт на шаг) путь
+ * хранит индекс начальной ячейки и для каждого шага код направления от
+ * 0 до 7, упакованный в половину байта.  Поэтому длинные пути, которые
+ * нужно долго держать в памяти, занимают примерно в сто раз меньше места.
+ *
+ * Коды направлений: 0 - (+1, 0), 1 - (+1, +1), 2 - (0, +1), 3 - (-1, +1),
+ * 4 - (-1, 0), 5 - (-1, -1), 6 - (0, -1), 7 - (+1, -1); противоположное
+ * направление имеет код <code>(d + 4) % 8</code>.
+ **/
+public class GridPath implements Iterable<Location>
+{
+    /** Смещения по x и y для каждого кода направления. **/
+    private static final int[] DX = { 1, 1, 0, -1, -1, -1, 0, 1 };
+    private static final int[] DY = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+    /** Ширина карты, по которой построен путь. **/
+    private final int width;
+
+    /** Индексы начальной и конечной ячеек пути. **/
+    private final int start, finish;
+
+    /** Количество ячеек пути, включая начальную. **/
+    private final int length;
+
+    /** Коды направлений шагов, по два в байте (младшие 4 бита - первый). **/
+    private final byte[] steps;
+
+    /** Стоимость пути. **/
+    private final float cost;
+
+
+    /**
+     * Создает путь по <code>length</code> ячейкам массива
+     * <code>cells</code>, начиная с позиции <code>offset</code>.  Соседние
+     * ячейки пути должны быть соседями на карте ширины <code>width</code>.
+     **/
+    public GridPath(int width, int[] cells, int offset, int length, float cost)
+    {
+        if (width <= 0)
+        {
+            throw new IllegalArgumentException(
+                "width must be positive; got " + width);
+        }
+
+        if (length <= 0)
+            throw new IllegalArgumentException("path must contain a cell");
+
+        this.width = width;
+        this.length = length;
+        this.cost = cost;
+        start = cells[offset];
+        finish = cells[offset + length - 1];
+        steps = new byte[length / 2];
+
+        for (int i = 1; i < length; i++)
+        {
+            int prev = cells[offset + i - 1];
+            int curr = cells[offset + i];
+            int d = direction(curr % width - prev % width,
+                              curr / width - prev / width);
+            if (d < 0)
+            {
+                throw new IllegalArgumentException("cells " + prev + " and " +
+                    curr + " are not neighbours");
+            }
+
+            steps[(i - 1) >> 1] |= (byte) (d << (((i - 1) & 1) << 2));
+        }
+    }
+
+    /**
+     * Создает компактный путь по цепочке путевых точек, заканчивающейся в
+     * <code>last</code>, на карте ширины <code>width</code>.  Возвращает
+     * <code>null</code>, если <code>last</code> равно <code>null</code>.
+     **/
+    public static GridPath fromWaypoint(Waypoint last, int width)
+    {
+        if (last == null)
+            return null;
+
+        int length = 0;
+        for (Waypoint wp = last; wp != null; wp = wp.getPrevious())
+            length++;
+
+        int[] cells = new int[length];
+        int i = length;
+        for (Waypoint wp = last; wp != null; wp = wp.getPrevious())
+        {
+            Location loc = wp.getLocation();
+            cells[--i] = loc.yCoord * width + loc.xCoord;
+        }
+
+        return new GridPath(width, cells, 0, length, last.getPreviousCost());
+    }
+
+    /**
+     * Returns the code of the step (dx, dy), or -1 if it does not move to a
+     * neighbouring cell.
+     **/
+    private static int direction(int dx, int dy)
+    {
+        for (int d = 0; d < DX.length; d++)
+        {
+            if (DX[d] == dx && DY[d] == dy)
+                return d;
+        }
+
+        return -1;
+    }
+
+    /** Returns the number of cells on the path, including the start. **/
+    public int length()
+    {
+        return length;
+    }
+
+    /** Returns the cost of the path. **/
+    public float getCost()
+    {
+        return cost;
+    }
+
+    /** Returns the width of the map the path was built for. **/
+    public int getMapWidth()
+    {
+        return width;
+    }
+
+    /** Returns the first location of the path. **/
+    public Location getStart()
+    {
+        return new Location(start % width, start / width);
+    }
+
+    /** Returns the last location of the path. **/
+    public Location getFinish()
+    {
+        return new Location(finish % width, finish / width);
+    }
+
+    /** Returns the index of the first cell of the path. **/
+    public int getStartCell()
+    {
+        return start;
+    }
+
+    /** Returns the index of the last cell of the path. **/
+    public int getFinishCell()
+    {
+        return finish;
+    }
+
+    /**
+     * Возвращает код направления шага с номером <code>i</code> (от 0 до
+     * <code>length() - 2</code>), ведущего из ячейки i в ячейку i + 1.
+     **/
+    public int getDirection(int i)
+    {
+        if (i < 0 || i >= length - 1)
+        {
+            throw new IndexOutOfBoundsException("step " + i +
+                " is outside the path of " + (length - 1) + " steps");
+        }
+
+        return (steps[i >> 1] >> ((i & 1) << 2)) & 0xF;
+    }
+
+    /**
+     * Копирует индексы ячеек пути в массив <code>dest</code>, начиная с
+     * позиции <code>offset</code>, и возвращает его.  Если массив равен
+     * <code>null</code>, создается новый.
+     **/
+    public int[] toCells(int[] dest, int offset)
+    {
+        if (dest == null)
+            dest = new int[offset + length];
+
+        int cell = start;
+        dest[offset] = cell;
+        for (int i = 1; i < length; i++)
+        {
+            int d = getDirection(i - 1);
+            cell += DY[d] * width + DX[d];
+            dest[offset + i] = cell;
+        }
+
+        return dest;
+    }
+
+    /**
+     * Возвращает итератор по местоположениям пути от начала к концу.
+     * Каждый вызов <code>next()</code> создает новый {@link Location};
+     * чтобы обойти путь без создания объектов, используйте
+     * {@link #toCells}.
+     **/
+    public Iterator<Location> iterator()
+    {
+        return new Iterator<Location>() {
+            private int i = 0;
+            private int x = start % width;
+            private int y = start / width;
+
+            public boolean hasNext()
+            {
+                return i < length;
+            }
+
+            public Location next()
+            {
+                if (i >= length)
+                    throw new NoSuchElementException();
+
+                if (i > 0)
+                {
+                    int d = getDirection(i - 1);
+                    x += DX[d];
+                    y += DY[d];
+                }
+
+                i++;
+                return new Location(x, y);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Возвращает путь, проходящий по тем же ячейкам в обратном порядке.
+     * Стоимость обратного пути пересчитывается по указанной карте, так как
+     * в нем оплачиваются другие ячейки: все, кроме нового начала.  Если
+     * исходное начало непроходимо, войти в него нельзя, и возвращается
+     * <code>null</code>.
+     **/
+    public GridPath reverse(Map2D map)
+    {
+        if (map.getWidth() != width)
+        {
+            throw new IllegalArgumentException("path was built for a map " +
+                "of width " + width + ", not " + map.getWidth());
+        }
+
+        int[] cells = toCells(null, 0);
+        for (int i = 0, j = length - 1; i < j; i++, j--)
+        {
+            int t = cells[i];
+            cells[i] = cells[j];
+            cells[j] = t;
+        }
+
+        float reverseCost = 0;
+        for (int i = 1; i < length; i++)
+        {
+            int value = map.getCellValueAt(cells[i]);
+            if (value >= AStarPathfinder.COST_LIMIT)
+                return null;
+
+            int prev = cells[i - 1];
+            reverseCost += (cells[i] % width != prev % width &&
+                            cells[i] / width != prev / width)
+                ? GridPathfinder.DIAGONAL_COST : 1f;
+            reverseCost += value;
+        }
+
+        return new GridPath(width, cells, 0, length, reverseCost);
+    }
+
+    /**
+     * Строит цепочку путевых точек по этому пути, например для кода,
+     * который работает с {@link Waypoint}, и возвращает последнюю путевую
+     * точку.  Стоимости путевых точек пересчитываются по карте.
+     **/
+    public Waypoint toWaypoint(Map2D map)
+    {
+        Location finishLoc = getFinish();
+        Waypoint wp = null;
+        float pathCost = 0;
+        int x = start % width;
+        int y = start / width;
+
+        for (int i = 0; i < length; i++)
+        {
+            if (i > 0)
+            {
+                int d = getDirection(i - 1);
+                x += DX[d];
+                y += DY[d];
+                pathCost += (DX[d] != 0 && DY[d] != 0)
+                    ? GridPathfinder.DIAGONAL_COST : 1f;
+                pathCost += map.getCellValueAt(y * width + x);
+            }
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(pathCost, GridPathfinder.estimateTravelCost(
+                x, y, finishLoc.xCoord, finishLoc.yCoord));
+        }
+
+        return wp;
+    }
+}
@@ -0,0 +1,353 @@
+/**
+ * Этот класс содержит вторую реализацию алгоритма поиска пути A*, которая
+ * работает с целочисленными индексами ячеек (<code>y * width + x</code>)
+ * вместо объектов {@link Location} и {@link Waypoint}.  Все промежуточное
+ * состояние хранится в примитивных массивах объекта {@link GridSearchState},
+ * который можно использовать повторно, поэтому сам поиск не создает
+ * объектов.  Цепочка путевых точек строится только один раз, когда путь
+ * найден.
+ *
+ * Правила перемещения и стоимости совпадают с {@link AStarPathfinder}:
+ * восемь соседей, стоимость шага - расстояние по прямой плюс стоимость
+ * ячейки, в которую мы наступаем, и путевые точки дороже
+ * {@link AStarPathfinder#COST_LIMIT} отбрасываются.
+ **/
+public class GridPathfinder
+{
+    /** Стоимость диагонального шага между соседними ячейками. **/
+    static final float DIAGONAL_COST = (float) Math.sqrt(2);
+
+
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * указанной карты.  Для поиска создается новый объект состояния;
+     * чтобы избежать выделения памяти при повторных запросах, используйте
+     * {@link #computePath(Map2D, GridSearchState)}.
+     **/
+    public static Waypoint computePath(Map2D map)
+    {
+        return computePath(map, new GridSearchState());
+    }
+
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * указанной карты, используя буферы переданного объекта состояния.
+     * Если путь найден, возвращается путевая точка последнего шага пути;
+     * иначе возвращается <code>null</code>.
+     **/
+    public static Waypoint computePath(Map2D map, GridSearchState state)
+    {
+        return computePath(map, map.getStart(), map.getFinish(), state);
+    }
+
+    /**
+     * Пытается вычислить путь между двумя указанными местоположениями.
+     * Начало и конец, сохраненные в карте, не используются.
+     **/
+    public static Waypoint computePath(Map2D map, Location start,
+                                       Location finish, GridSearchState state)
+    {
+        return computePath(map, start, finish, state, 1f);
+    }
+
+    /**
+     * Пытается вычислить путь между двумя указанными местоположениями
+     * взвешенным алгоритмом A*: оценка оставшейся стоимости умножается на
+     * <code>weight</code> (не меньше 1).  Чем больше вес, тем меньше ячеек
+     * раскрывает поиск, а стоимость найденного пути не больше чем в
+     * <code>weight</code> раз превышает стоимость оптимального.  При весе 1
+     * это обычный поиск A*.
+     **/
+    public static Waypoint computePath(Map2D map, Location start,
+                                       Location finish, GridSearchState state,
+                                       float weight)
+    {
+        return computePath(map, start, finish, state,
+                           MovementModel.EIGHT_CONNECTED, weight);
+    }
+
+    /**
+     * Пытается вычислить путь между двумя указанными местоположениями с
+     * указанной моделью перемещения (набором шагов и эвристикой) и весом
+     * эвристики.  Индекс связности карты рассчитан на восемь соседей,
+     * поэтому при других моделях он только отсекает заведомо
+     * недостижимые цели.
+     **/
+    public static Waypoint computePath(Map2D map, Location start,
+                                       Location finish, GridSearchState state,
+                                       MovementModel model, float weight)
+    {
+        if (model == null)
+            throw new NullPointerException("model cannot be null");
+
+        if (!(weight >= 1f))
+        {
+            throw new IllegalArgumentException(
+                "weight must be at least 1; got " + weight);
+        }
+
+        if (state == null)
+            throw new NullPointerException("state cannot be null");
+
+        int width = map.getWidth();
+        int startCell = cellIndex(map, start);
+        int finishCell = cellIndex(map, finish);
+
+        SearchStats stats = state.stats;
+        if (stats != null)
+            stats.beginSearch();
+
+        boolean found = search(map, startCell, finishCell, state, model,
+                               weight);
+        if (stats != null)
+            stats.endSearch(state, found);
+
+        if (!found)
+            return null;
+
+        Waypoint path = buildPath(width, startCell, finishCell, state);
+        if (stats != null)
+            stats.endPath();
+
+        return path;
+    }
+
+    /**
+     * Пытается вычислить путь между двумя указанными местоположениями и
+     * возвращает его в компактном виде {@link GridPath}, не создавая
+     * цепочку путевых точек, или <code>null</code>, если путь не найден.
+     **/
+    public static GridPath findPath(Map2D map, Location start,
+                                    Location finish, GridSearchState state)
+    {
+        if (state == null)
+            throw new NullPointerException("state cannot be null");
+
+        int width = map.getWidth();
+        int startCell = cellIndex(map, start);
+        int finishCell = cellIndex(map, finish);
+
+        SearchStats stats = state.stats;
+        if (stats != null)
+            stats.beginSearch();
+
+        boolean found = search(map, startCell, finishCell, state);
+        if (stats != null)
+            stats.endSearch(state, found);
+
+        if (!found)
+            return null;
+
+        int length = 1;
+        for (int c = finishCell; c != startCell; c = state.parent[c])
+            length++;
+
+        int[] cells = state.getPathBuffer(length);
+        int i = length;
+        for (int c = finishCell; i > 0; c = state.parent[c])
+            cells[--i] = c;
+
+        GridPath path = new GridPath(width, cells, 0, length,
+                                     state.g[finishCell]);
+        if (stats != null)
+            stats.endPath();
+
+        return path;
+    }
+
+    /**
+     * Выполняет поиск A* от ячейки <code>start</code> до ячейки
+     * <code>goal</code>.  Возвращает true, если путь найден; в этом случае
+     * массивы <code>g</code> и <code>parent</code> объекта состояния
+     * описывают путь от начала до цели.
+     **/
+    static boolean search(Map2D map, int start, int goal, GridSearchState state)
+    {
+        return search(map, start, goal, state, 1f);
+    }
+
+    /**
+     * Выполняет взвешенный поиск A*, в котором оценка оставшейся стоимости
+     * умножается на <code>weight</code>.  Закрытые ячейки повторно не
+     * открываются; стоимость найденного пути все равно не больше чем в
+     * <code>weight</code> раз превышает оптимальную.
+     **/
+    static boolean search(Map2D map, int start, int goal, GridSearchState state,
+                          float weight)
+    {
+        return search(map, start, goal, state, MovementModel.EIGHT_CONNECTED,
+                      weight);
+    }
+
+    /**
+     * Выполняет взвешенный поиск A* с указанной моделью перемещения.
+     * Соседи ячейки и стоимости шагов берутся из таблиц модели.  Если к
+     * состоянию подключен {@link SearchListener}, он получает раскрытые
+     * и открытые ячейки.
+     **/
+    static boolean search(Map2D map, int start, int goal, GridSearchState state,
+                          MovementModel model, float weight)
+    {
+        SearchEvents events = state.events;
+        if (events == null)
+            return search(map, start, goal, state, model, weight, null);
+
+        events.started(map, start, goal);
+        boolean found = false;
+        try
+        {
+            found = search(map, start, goal, state, model, weight, events);
+        }
+        finally
+        {
+            events.finished(found);
+        }
+
+        return found;
+    }
+
+    /**
+     * Основной цикл поиска A*.  О каждой раскрытой и открытой ячейке
+     * сообщается <code>events</code>, если он не равен <code>null</code>.
+     **/
+    private static boolean search(Map2D map, int start, int goal,
+                                  GridSearchState state, MovementModel model,
+                                  float weight, SearchEvents events)
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        state.reset(width * height);
+        if (map.isDisconnected(start, goal))
+            return false;
+
+        IntMinHeap open = state.open;
+        float[] g = state.g;
+        Heuristic heuristic = model.getHeuristic();
+        int steps = model.getStepCount();
+
+        state.setReached(start, 0, -1);
+        open.update(start, weight * heuristic.estimate(start % width,
+            start / width, goalX, goalY));
+
+        while (!open.isEmpty())
+        {
+            int curr = open.poll();
+            if (curr == goal)
+                return true;
+
+            state.close(curr);
+            state.expansions++;
+            if (events != null)
+                events.expanded(curr);
+
+            int currX = curr % width;
+            int currY = curr / width;
+            float currCost = g[curr];
+
+            for (int d = 0; d < steps; d++)
+            {
+                int x = currX + model.getDX(d);
+                int y = currY + model.getDY(d);
+                if (x < 0 || x >= width || y < 0 || y >= height)
+                    continue;
+
+                int next = y * width + x;
+                if (state.isClosed(next))
+                    continue;
+
+                // Тот же порядок сложения, что и в AStarPathfinder, чтобы
+                // стоимости путей совпадали до последнего бита.
+                float cost = currCost + model.getStepCost(d);
+                cost += map.getCellValueAt(next);
+
+                if (cost >= AStarPathfinder.COST_LIMIT)
+                    continue;
+
+                if (state.isReached(next) && g[next] <= cost)
+                    continue;
+
+                state.setReached(next, cost, curr);
+                open.update(next,
+                    cost + weight * heuristic.estimate(x, y, goalX, goalY));
+                if (events != null)
+                    events.opened(next);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Строит цепочку путевых точек от ячейки <code>start</code> до ячейки
+     * <code>goal</code> по массиву <code>parent</code> и возвращает
+     * последнюю путевую точку.
+     **/
+    static Waypoint buildPath(int width, int start, int goal,
+                              GridSearchState state)
+    {
+        int length = 1;
+        for (int c = goal; c != start; c = state.parent[c])
+            length++;
+
+        int[] cells = state.getPathBuffer(length);
+        int i = length;
+        for (int c = goal; i > 0; c = state.parent[c])
+            cells[--i] = c;
+
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        Waypoint wp = null;
+        for (i = 0; i < length; i++)
+        {
+            int x = cells[i] % width;
+            int y = cells[i] / width;
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(state.g[cells[i]],
+                        estimateTravelCost(x, y, goalX, goalY));
+        }
+
+        return wp;
+    }
+
+    /**
+     * Возвращает индекс ячейки для указанного местоположения.  Если
+     * местоположение находится за пределами карты, выдается исключение
+     * <code>IllegalArgumentException</code>.
+     **/
+    static int cellIndex(Map2D map, Location loc)
+    {
+        if (loc == null)
+            throw new NullPointerException("loc cannot be null");
+
+        if ((long) map.getWidth() * map.getHeight() > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("map has too many cells for " +
+                "int cell indices: " + map.getWidth() + "x" + map.getHeight());
+        }
+
+        if (!map.contains(loc))
+        {
+            throw new IllegalArgumentException("location (" + loc.xCoord +
+                ", " + loc.yCoord + ") is outside the map");
+        }
+
+        return loc.yCoord * map.getWidth() + loc.xCoord;
+    }
+
+    /**
+     * Оценивает стоимость проезда между двумя ячейками как расстояние по
+     * прямой, так же как {@link AStarPathfinder}.
+     **/
+    static float estimateTravelCost(int x, int y, int destX, int destY)
+    {
+        int dx = destX - x;
+        int dy = destY - y;
+
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
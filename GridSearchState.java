@@ -0,0 +1,247 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс хранит состояние поиска для {@link GridPathfinder}.  В отличие
+ * от {@link AStarState}, вершины здесь - это целочисленные индексы ячеек
+ * карты (<code>y * width + x</code>), а стоимости и ссылки на предыдущие
+ * вершины хранятся в параллельных примитивных массивах.  Буферы
+ * сохраняются между вызовами и только растут, поэтому повторный поиск
+ * по карте того же размера не создает новых объектов.
+ *
+ * Чтобы очистка состояния между запросами не зависела от размера карты,
+ * ячейки помечаются номером поколения: ячейка считается достигнутой или
+ * закрытой, только если её метка относится к текущему поиску.  Новый
+ * поиск просто увеличивает номер поколения.
+ *
+ * Объект состояния не является потокобезопасным; каждому потоку нужен
+ * свой экземпляр, например {@link #forCurrentThread()}.
+ **/
+public class GridSearchState
+{
+    /** Фактическая стоимость пути от начала до каждой достигнутой ячейки. **/
+    float[] g = new float[0];
+
+    /** Индекс предыдущей ячейки на лучшем найденном пути. **/
+    int[] parent = new int[0];
+
+    /** Набор открытых ячеек, упорядоченный по общей стоимости. **/
+    IntMinHeap open = new IntMinHeap();
+
+    /**
+     * Метка поколения каждой ячейки.  Значение <code>generation</code>
+     * означает, что ячейка достигнута в текущем поиске, а
+     * <code>generation + 1</code> - что она еще и закрыта.  Метки прошлых
+     * поисков всегда меньше текущего поколения.
+     **/
+    private int[] marks = new int[0];
+
+    /** Номер поколения текущего поиска; всегда четный. **/
+    private int generation = 2;
+
+    /** Количество ячеек, раскрытых последним поиском. **/
+    int expansions;
+
+    /**
+     * Счетчики операций с открытым набором последнего поиска: добавления
+     * новых ячеек, уменьшения ключа уже открытых ячеек и наибольший
+     * размер набора.
+     **/
+    int pushes, decreaseKeys, peakOpenSize;
+
+    /** Объект, в который записывается статистика поиска, или null. **/
+    SearchStats stats;
+
+    /** Пачки событий для слушателя поиска, или null. **/
+    SearchEvents events;
+
+    /** Состояние поиска, закрепленное за каждым потоком. **/
+    private static final ThreadLocal<GridSearchState> PER_THREAD =
+        new ThreadLocal<GridSearchState>() {
+            protected GridSearchState initialValue()
+            {
+                return new GridSearchState();
+            }
+        };
+
+    /** Буфер индексов ячеек, используемый при построении пути. **/
+    private int[] pathBuffer = new int[0];
+
+
+    /** Creates a new, empty search state.  Buffers are sized on first use. **/
+    public GridSearchState()
+    {
+    }
+
+    /**
+     * Creates a new search state with buffers preallocated for maps of up to
+     * <code>cells</code> cells.
+     **/
+    public GridSearchState(int cells)
+    {
+        ensureCapacity(cells);
+    }
+
+    /**
+     * Возвращает объект состояния, закрепленный за текущим потоком.
+     * Повторные запросы из одного потока используют одни и те же буферы.
+     **/
+    public static GridSearchState forCurrentThread()
+    {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Возвращает количество ячеек, раскрытых (извлеченных из открытого
+     * набора) последним поиском, выполненным с этим состоянием.
+     **/
+    public int getExpansions()
+    {
+        return expansions;
+    }
+
+    /**
+     * Задает объект, в который алгоритмы поиска будут записывать
+     * статистику каждого поиска с этим состоянием, или <code>null</code>,
+     * чтобы отключить сбор статистики.  Без объекта статистики время
+     * поиска не измеряется.
+     **/
+    public void setStats(SearchStats stats)
+    {
+        this.stats = stats;
+    }
+
+    /** Returns the statistics object of this state, or null. **/
+    public SearchStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Подключает слушателя, который будет наблюдать за поисками с этим
+     * состоянием, или отключает его, если передан <code>null</code>.
+     * Ячейки передаются пачками не меньше 1024 раскрытых ячеек и не чаще
+     * примерно 30 раз в секунду.
+     **/
+    public void setSearchListener(SearchListener listener)
+    {
+        setSearchListener(listener, SearchEvents.DEFAULT_BATCH_SIZE,
+                          SearchEvents.DEFAULT_MIN_INTERVAL_NANOS / 1000000);
+    }
+
+    /**
+     * Подключает слушателя поиска, который получает пачки не меньше
+     * <code>batchSize</code> раскрытых ячеек и не чаще одной за
+     * <code>minIntervalMillis</code> миллисекунд.  При интервале 0 каждая
+     * пачка содержит ровно <code>batchSize</code> раскрытых ячеек, кроме
+     * последней, что удобно для записи кадров.
+     **/
+    public void setSearchListener(SearchListener listener, int batchSize,
+                                  long minIntervalMillis)
+    {
+        if (listener == null)
+            events = null;
+        else
+        {
+            events = new SearchEvents(listener, batchSize,
+                                      minIntervalMillis * 1000000);
+        }
+    }
+
+    /** Returns the search listener of this state, or null. **/
+    public SearchListener getSearchListener()
+    {
+        return (events != null) ? events.listener : null;
+    }
+
+    /** Returns the number of cells the buffers can currently hold. **/
+    public int getCapacity()
+    {
+        return g.length;
+    }
+
+    /**
+     * Подготавливает состояние к новому поиску по карте из <code>cells</code>
+     * ячеек.  Буферы увеличиваются при необходимости, а наборы
+     * достигнутых и закрытых ячеек очищаются сменой поколения за O(1).
+     * Куча открытых ячеек очищается за время, пропорциональное числу
+     * ячеек, оставшихся в ней после прошлого поиска.
+     **/
+    void reset(int cells)
+    {
+        ensureCapacity(cells);
+
+        generation += 2;
+        if (generation < 0)
+        {
+            // Номера поколений исчерпаны; сбросим все метки.
+            Arrays.fill(marks, 0);
+            generation = 2;
+        }
+
+        expansions = 0;
+        pushes = 0;
+        decreaseKeys = 0;
+        peakOpenSize = 0;
+        open.clear();
+    }
+
+    /** Grows the buffers so that they can hold <code>cells</code> cells. **/
+    private void ensureCapacity(int cells)
+    {
+        if (cells <= g.length)
+            return;
+
+        g = new float[cells];
+        parent = new int[cells];
+        marks = new int[cells];
+        open.ensureCapacity(cells);
+    }
+
+    /** Returns true if the cell has been reached in the current search. **/
+    boolean isReached(int cell)
+    {
+        return marks[cell] >= generation;
+    }
+
+    /** Records the cost and predecessor of a cell reached by the search. **/
+    void setReached(int cell, float cost, int prev)
+    {
+        if (marks[cell] == generation)
+            decreaseKeys++;
+        else
+            pushes++;
+
+        marks[cell] = generation;
+        g[cell] = cost;
+        parent[cell] = prev;
+    }
+
+    /** Returns true if the cell is in the closed set. **/
+    boolean isClosed(int cell)
+    {
+        return marks[cell] == generation + 1;
+    }
+
+    /**
+     * Moves the cell into the closed set.  It is called right after the cell
+     * leaves the open set, so the open set size is at its local peak.
+     **/
+    void close(int cell)
+    {
+        marks[cell] = generation + 1;
+        if (open.size() + 1 > peakOpenSize)
+            peakOpenSize = open.size() + 1;
+    }
+
+    /**
+     * Гарантирует, что буфер пути может хранить <code>length</code>
+     * индексов, и возвращает его.
+     **/
+    int[] getPathBuffer(int length)
+    {
+        if (pathBuffer.length < length)
+            pathBuffer = new int[Math.max(length, pathBuffer.length * 2)];
+
+        return pathBuffer;
+    }
+}
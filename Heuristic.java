@@ -0,0 +1,50 @@
+/**
+ * Этот интерфейс описывает оценку стоимости пути между двумя ячейками,
+ * которую алгоритм A* использует, чтобы раскрывать сначала ячейки,
+ * лежащие ближе к цели.  Оценка не должна превышать стоимость самого
+ * дешевого пути (быть допустимой), иначе найденный путь может оказаться
+ * не оптимальным.  Чем ближе оценка к настоящей стоимости, тем меньше
+ * ячеек раскрывает поиск.
+ **/
+public interface Heuristic
+{
+    /**
+     * Расстояние по прямой.  Допустимо для любых шагов, длина которых не
+     * меньше расстояния между ячейками, но требует вычисления корня.
+     **/
+    Heuristic EUCLIDEAN = new Heuristic() {
+        public float estimate(int x, int y, int destX, int destY)
+        {
+            int dx = destX - x;
+            int dy = destY - y;
+            return (float) Math.sqrt(dx * dx + dy * dy);
+        }
+    };
+
+    /**
+     * Октильное расстояние: длина пути из диагональных и прямых шагов без
+     * препятствий.  Точная нижняя граница для восьми соседей, вычисляется
+     * без корня.
+     **/
+    Heuristic OCTILE = new Heuristic() {
+        public float estimate(int x, int y, int destX, int destY)
+        {
+            int dx = Math.abs(destX - x);
+            int dy = Math.abs(destY - y);
+            int min = Math.min(dx, dy);
+            return (dx + dy - 2 * min) + min * GridPathfinder.DIAGONAL_COST;
+        }
+    };
+
+    /** Манхэттенское расстояние: точная нижняя граница для четырех соседей. **/
+    Heuristic MANHATTAN = new Heuristic() {
+        public float estimate(int x, int y, int destX, int destY)
+        {
+            return Math.abs(destX - x) + Math.abs(destY - y);
+        }
+    };
+
+
+    /** Returns the estimated cost of travelling from (x, y) to (destX, destY). **/
+    float estimate(int x, int y, int destX, int destY);
+}
@@ -0,0 +1,796 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс реализует иерархический поиск пути HPA* по карте
+ * {@link Map2D}.  Карта разбивается на кластеры фиксированного размера.
+ * На границах соседних кластеров выбираются входы - пары проходимых ячеек,
+ * через которые путь может перейти из одного кластера в другой, - и для
+ * каждого кластера заранее вычисляются стоимости путей между его входами.
+ * Запрос решается поиском A* по этому абстрактному графу входов, после
+ * чего на полном разрешении уточняются только участки пути внутри
+ * выбранных кластеров.
+ *
+ * Объект регистрируется как {@link MapListener} своей карты: при изменении
+ * ячейки помечаются "грязными" только затронутые кластеры (и их соседи,
+ * если ячейка лежит на границе), и при следующем запросе перестраиваются
+ * только они.
+ *
+ * Путь, найденный HPA*, проходит через входы кластеров и поэтому может
+ * быть немного длиннее оптимального.  Если путь существует, он всегда
+ * будет найден.  Объект не является потокобезопасным.
+ **/
+public class HierarchicalPathfinder implements MapListener
+{
+    /** Размер кластера по умолчанию. **/
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    /**
+     * Если участок границы, через который можно пройти, короче этого
+     * значения, для него создается один вход посередине; иначе два входа
+     * на концах участка.
+     **/
+    private static final int LONG_ENTRANCE = 6;
+
+    /** Стоимость недостижимой ячейки или входа. **/
+    private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+    /** Карта, по которой выполняется поиск. **/
+    private Map2D map;
+
+    /** Ширина и высота карты. **/
+    private int width, height;
+
+    /** Сторона кластера в ячейках. **/
+    private int clusterSize;
+
+    /** Количество кластеров по горизонтали и вертикали. **/
+    private int clustersX, clustersY;
+
+    /** Отсортированные индексы ячеек-входов каждого кластера. **/
+    private int[][] entrances;
+
+    /**
+     * Стоимости путей внутри каждого кластера: элемент
+     * <code>i * k + j</code> - стоимость пути от входа i до входа j, где k -
+     * количество входов кластера.
+     **/
+    private float[][] distances;
+
+    /**
+     * Для каждого входа каждого кластера - ячейки соседних кластеров, в
+     * которые можно перейти одним шагом.
+     **/
+    private int[][][] partners;
+
+    /** True для кластеров, которые нужно перестроить. **/
+    private boolean[] dirty;
+
+    /** Список кластеров, которые нужно перестроить. **/
+    private int[] dirtyList;
+
+    /** Количество элементов в списке кластеров для перестройки. **/
+    private int dirtyCount;
+
+    /** Состояние поиска по абстрактному графу входов. **/
+    private GridSearchState state = new GridSearchState();
+
+    /** Буферы поиска внутри одного кластера, в локальных индексах. **/
+    private float[] localCost;
+    private int[] localParent;
+    private boolean[] localClosed;
+    private IntMinHeap localOpen;
+
+    /** Рабочие списки пар ячеек при построении входов. **/
+    private int[] pairA = new int[16];
+    private int[] pairB = new int[16];
+    private int pairCount;
+
+    /** Буфер ячеек при построении пути. **/
+    private int[] pathCells = new int[64];
+    private int pathLength;
+
+
+    /**
+     * Строит иерархическое представление указанной карты с кластерами
+     * размера <code>clusterSize</code> x <code>clusterSize</code> и
+     * подписывается на изменения карты.
+     **/
+    public HierarchicalPathfinder(Map2D map, int clusterSize)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (clusterSize < 2)
+        {
+            throw new IllegalArgumentException(
+                "clusterSize must be at least 2; got " + clusterSize);
+        }
+
+        if ((long) map.getWidth() * map.getHeight() > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("map has too many cells for " +
+                "int cell indices: " + map.getWidth() + "x" + map.getHeight());
+        }
+
+        this.map = map;
+        this.clusterSize = clusterSize;
+        width = map.getWidth();
+        height = map.getHeight();
+        clustersX = (width + clusterSize - 1) / clusterSize;
+        clustersY = (height + clusterSize - 1) / clusterSize;
+
+        int clusters = clustersX * clustersY;
+        entrances = new int[clusters][];
+        distances = new float[clusters][];
+        partners = new int[clusters][][];
+        dirty = new boolean[clusters];
+        dirtyList = new int[clusters];
+
+        int localCells = clusterSize * clusterSize;
+        localCost = new float[localCells];
+        localParent = new int[localCells];
+        localClosed = new boolean[localCells];
+        localOpen = new IntMinHeap(localCells);
+
+        for (int c = 0; c < clusters; c++)
+            markDirty(c);
+
+        rebuildDirtyClusters();
+        map.addMapListener(this);
+    }
+
+    /** Builds the hierarchy with the default cluster size. **/
+    public HierarchicalPathfinder(Map2D map)
+    {
+        this(map, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /** Returns the map that this pathfinder navigates. **/
+    public Map2D getMap()
+    {
+        return map;
+    }
+
+    /** Returns the side length of a cluster, in cells. **/
+    public int getClusterSize()
+    {
+        return clusterSize;
+    }
+
+    /**
+     * Отписывается от изменений карты.  После вызова этого метода объект
+     * больше нельзя использовать.
+     **/
+    public void detach()
+    {
+        map.removeMapListener(this);
+    }
+
+    /**
+     * Помечает для перестройки кластеры, затронутые изменением области
+     * карты.  Область расширяется на одну ячейку, чтобы захватить
+     * соседние кластеры, если изменилась граничная ячейка.
+     **/
+    public void mapChanged(Map2D map, int x, int y, int w, int h)
+    {
+        int cx0 = Math.max(x - 1, 0) / clusterSize;
+        int cy0 = Math.max(y - 1, 0) / clusterSize;
+        int cx1 = Math.min(x + w, width - 1) / clusterSize;
+        int cy1 = Math.min(y + h, height - 1) / clusterSize;
+
+        for (int cy = cy0; cy <= cy1; cy++)
+        {
+            for (int cx = cx0; cx <= cx1; cx++)
+                markDirty(cy * clustersX + cx);
+        }
+    }
+
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * карты.  Возвращается последняя путевая точка пути или
+     * <code>null</code>, если путь не найден.
+     **/
+    public Waypoint computePath()
+    {
+        return computePath(map.getStart(), map.getFinish());
+    }
+
+    /** Tries to compute a path between the two specified locations. **/
+    public Waypoint computePath(Location start, Location finish)
+    {
+        int s = GridPathfinder.cellIndex(map, start);
+        int t = GridPathfinder.cellIndex(map, finish);
+
+        rebuildDirtyClusters();
+
+        pathLength = 0;
+        if (s == t)
+        {
+            appendPathCell(s);
+            return buildPath();
+        }
+
+        if (!isWalkable(t) || map.isDisconnected(s, t))
+            return null;
+
+        if (!searchAbstract(s, t))
+            return null;
+
+        // Соберем узлы абстрактного пути от начала к цели.
+        int nodes = 0;
+        for (int c = t; c != -1; c = state.parent[c])
+            nodes++;
+
+        int[] route = state.getPathBuffer(nodes);
+        int i = nodes;
+        for (int c = t; i > 0; c = state.parent[c])
+            route[--i] = c;
+
+        // Уточним каждый участок абстрактного пути на полном разрешении.
+        appendPathCell(s);
+        for (i = 1; i < nodes; i++)
+        {
+            int from = route[i - 1];
+            int to = route[i];
+
+            if (clusterOf(from) == clusterOf(to))
+                appendClusterPath(from, to);
+            else
+                appendPathCell(to);
+        }
+
+        Waypoint wp = buildPath();
+        if (wp.getPreviousCost() >= AStarPathfinder.COST_LIMIT)
+            return null;
+
+        return wp;
+    }
+
+    /**
+     * Выполняет поиск A* по графу входов от ячейки <code>s</code> до ячейки
+     * <code>t</code>.  Начало и цель подключаются к входам своих кластеров
+     * поиском внутри кластера.
+     **/
+    private boolean searchAbstract(int s, int t)
+    {
+        int sc = clusterOf(s);
+        int tc = clusterOf(t);
+        int tx = t % width;
+        int ty = t / width;
+
+        state.reset(width * height);
+        IntMinHeap open = state.open;
+        float[] g = state.g;
+
+        // Подключим начало к входам его кластера.
+        state.setReached(s, 0, -1);
+        searchCluster(sc, s, -1, false);
+        int[] startEntrances = entrances[sc];
+        for (int i = 0; i < startEntrances.length; i++)
+        {
+            int e = startEntrances[i];
+            float cost = localCost[toLocal(sc, e)];
+            if (e == s || cost == UNREACHABLE)
+                continue;
+
+            state.setReached(e, cost, s);
+            open.update(e, cost + estimate(e, tx, ty));
+        }
+
+        // Если начало и цель в одном кластере, учтем прямой путь.
+        if (sc == tc)
+        {
+            float cost = localCost[toLocal(sc, t)];
+            if (cost != UNREACHABLE && (!state.isReached(t) || cost < g[t]))
+            {
+                state.setReached(t, cost, s);
+                open.update(t, cost);
+            }
+        }
+
+        if (isEntrance(sc, s))
+            open.update(s, estimate(s, tx, ty));
+        else
+            state.close(s);
+
+        // Начало на границе кластера может сразу шагнуть в соседний
+        // кластер.  Это важно, когда сама начальная ячейка непроходима и
+        // поэтому не связана с входами своего кластера.
+        int sx = s % width;
+        int sy = s / width;
+        for (int y = sy - 1; y <= sy + 1; y++)
+        {
+            for (int x = sx - 1; x <= sx + 1; x++)
+            {
+                if (!isWalkable(x, y))
+                    continue;
+
+                int v = y * width + x;
+                int vc = clusterOf(v);
+                if (vc == sc)
+                    continue;
+
+                float cost = stepCost(s, v);
+                if (v == t || isEntrance(vc, v))
+                {
+                    relax(v, s, cost, tx, ty);
+                    continue;
+                }
+
+                if (state.isReached(v) && g[v] <= cost)
+                    continue;
+
+                state.setReached(v, cost, s);
+                state.close(v);
+
+                searchCluster(vc, v, -1, false);
+                int[] ents = entrances[vc];
+                for (int i = 0; i < ents.length; i++)
+                {
+                    float d = localCost[toLocal(vc, ents[i])];
+                    if (d != UNREACHABLE)
+                        relax(ents[i], v, cost + d, tx, ty);
+                }
+
+                if (vc == tc && localCost[toLocal(vc, t)] != UNREACHABLE)
+                    relax(t, v, cost + localCost[toLocal(vc, t)], tx, ty);
+            }
+        }
+
+        // Стоимости пути от входов кластера цели до самой цели.
+        searchCluster(tc, t, -1, true);
+        int[] goalEntrances = entrances[tc];
+        float[] goalCost = new float[goalEntrances.length];
+        for (int i = 0; i < goalEntrances.length; i++)
+            goalCost[i] = localCost[toLocal(tc, goalEntrances[i])];
+
+        while (!open.isEmpty())
+        {
+            int u = open.poll();
+            if (u == t)
+                return true;
+
+            state.close(u);
+
+            int c = clusterOf(u);
+            int[] ents = entrances[c];
+            int k = ents.length;
+            int i = Arrays.binarySearch(ents, u);
+            float gu = g[u];
+
+            // Переходы к другим входам того же кластера.
+            float[] dist = distances[c];
+            for (int j = 0; j < k; j++)
+            {
+                float d = dist[i * k + j];
+                if (j != i && d != UNREACHABLE)
+                    relax(ents[j], u, gu + d, tx, ty);
+            }
+
+            // Переходы в соседние кластеры.
+            int[] links = partners[c][i];
+            for (int j = 0; j < links.length; j++)
+                relax(links[j], u, gu + stepCost(u, links[j]), tx, ty);
+
+            // Переход к цели.
+            if (c == tc && goalCost[i] != UNREACHABLE)
+                relax(t, u, gu + goalCost[i], tx, ty);
+        }
+
+        return false;
+    }
+
+    /** Relaxes the abstract edge from <code>from</code> into <code>to</code>. **/
+    private void relax(int to, int from, float cost, int tx, int ty)
+    {
+        if (state.isClosed(to))
+            return;
+
+        if (state.isReached(to) && state.g[to] <= cost)
+            return;
+
+        state.setReached(to, cost, from);
+        state.open.update(to, cost + estimate(to, tx, ty));
+    }
+
+    /**
+     * Добавляет в буфер пути ячейки пути внутри кластера от
+     * <code>from</code> (не включая) до <code>to</code> (включая).
+     **/
+    private void appendClusterPath(int from, int to)
+    {
+        int c = clusterOf(from);
+        searchCluster(c, from, to, false);
+
+        int start = pathLength;
+        int end = toLocal(c, from);
+        for (int l = toLocal(c, to); l != end; l = localParent[l])
+            appendPathCell(toGlobal(c, l));
+
+        // Ячейки добавлены в обратном порядке; развернем их.
+        for (int i = start, j = pathLength - 1; i < j; i++, j--)
+        {
+            int tmp = pathCells[i];
+            pathCells[i] = pathCells[j];
+            pathCells[j] = tmp;
+        }
+    }
+
+    /**
+     * Выполняет поиск внутри кластера <code>c</code> от ячейки
+     * <code>source</code>.  Если <code>target</code> неотрицателен, поиск
+     * останавливается на этой ячейке; иначе вычисляются стоимости до всех
+     * ячеек кластера.  При <code>reverse</code>, равном true, вычисляются
+     * стоимости путей <em>до</em> ячейки <code>source</code>.
+     **/
+    private void searchCluster(int c, int source, int target, boolean reverse)
+    {
+        int x0 = (c % clustersX) * clusterSize;
+        int y0 = (c / clustersX) * clusterSize;
+        int cw = Math.min(clusterSize, width - x0);
+        int ch = Math.min(clusterSize, height - y0);
+
+        Arrays.fill(localCost, 0, cw * ch, UNREACHABLE);
+        Arrays.fill(localClosed, 0, cw * ch, false);
+        localOpen.clear();
+
+        int tx = target % width;
+        int ty = target / width;
+
+        int src = toLocal(c, source);
+        localCost[src] = 0;
+        localParent[src] = -1;
+        localOpen.update(src, 0);
+
+        int tgt = (target >= 0) ? toLocal(c, target) : -1;
+
+        while (!localOpen.isEmpty())
+        {
+            int u = localOpen.poll();
+            if (u == tgt)
+                return;
+
+            localClosed[u] = true;
+
+            int ux = u % cw;
+            int uy = u / cw;
+            int uValue = map.getCellValueAt((y0 + uy) * width + x0 + ux);
+
+            for (int vy = uy - 1; vy <= uy + 1; vy++)
+            {
+                if (vy < 0 || vy >= ch)
+                    continue;
+
+                for (int vx = ux - 1; vx <= ux + 1; vx++)
+                {
+                    if (vx < 0 || vx >= cw || (vx == ux && vy == uy))
+                        continue;
+
+                    int v = vy * cw + vx;
+                    if (localClosed[v])
+                        continue;
+
+                    int vValue = map.getCellValueAt((y0 + vy) * width + x0 + vx);
+                    if (vValue >= AStarPathfinder.COST_LIMIT)
+                        continue;
+
+                    float cost = localCost[u] +
+                        ((vx != ux && vy != uy) ? GridPathfinder.DIAGONAL_COST : 1f);
+                    cost += reverse ? uValue : vValue;
+
+                    if (cost >= localCost[v])
+                        continue;
+
+                    localCost[v] = cost;
+                    localParent[v] = u;
+
+                    float key = cost;
+                    if (tgt >= 0)
+                        key += GridPathfinder.estimateTravelCost(x0 + vx,
+                            y0 + vy, tx, ty);
+
+                    localOpen.update(v, key);
+                }
+            }
+        }
+    }
+
+    /** Rebuilds every cluster that has been marked dirty. **/
+    private void rebuildDirtyClusters()
+    {
+        for (int i = 0; i < dirtyCount; i++)
+        {
+            int c = dirtyList[i];
+            dirty[c] = false;
+            rebuildCluster(c);
+        }
+
+        dirtyCount = 0;
+    }
+
+    /** Adds the cluster to the rebuild list, if it is not already there. **/
+    private void markDirty(int c)
+    {
+        if (dirty[c])
+            return;
+
+        dirty[c] = true;
+        dirtyList[dirtyCount++] = c;
+    }
+
+    /**
+     * Заново вычисляет входы кластера <code>c</code>, их переходы в
+     * соседние кластеры и стоимости путей между входами внутри кластера.
+     **/
+    private void rebuildCluster(int c)
+    {
+        int cx = c % clustersX;
+        int cy = c / clustersX;
+
+        pairCount = 0;
+        for (int dy = -1; dy <= 1; dy++)
+        {
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                int nx = cx + dx;
+                int ny = cy + dy;
+                if ((dx == 0 && dy == 0) || nx < 0 || ny < 0 ||
+                    nx >= clustersX || ny >= clustersY)
+                    continue;
+
+                collectTransitions(cx, cy, dx, dy);
+            }
+        }
+
+        // Уникальные ячейки-входы в порядке возрастания индекса.
+        int[] sorted = Arrays.copyOf(pairA, pairCount);
+        Arrays.sort(sorted);
+        int k = 0;
+        for (int i = 0; i < sorted.length; i++)
+        {
+            if (k == 0 || sorted[k - 1] != sorted[i])
+                sorted[k++] = sorted[i];
+        }
+
+        int[] ents = Arrays.copyOf(sorted, k);
+        int[] counts = new int[k];
+        for (int i = 0; i < pairCount; i++)
+            counts[Arrays.binarySearch(ents, pairA[i])]++;
+
+        int[][] links = new int[k][];
+        for (int i = 0; i < k; i++)
+            links[i] = new int[counts[i]];
+
+        for (int i = 0; i < pairCount; i++)
+        {
+            int e = Arrays.binarySearch(ents, pairA[i]);
+            links[e][--counts[e]] = pairB[i];
+        }
+
+        float[] dist = new float[k * k];
+        for (int i = 0; i < k; i++)
+        {
+            searchCluster(c, ents[i], -1, false);
+            for (int j = 0; j < k; j++)
+                dist[i * k + j] = localCost[toLocal(c, ents[j])];
+        }
+
+        entrances[c] = ents;
+        partners[c] = links;
+        distances[c] = dist;
+    }
+
+    /**
+     * Добавляет в рабочий список пары ячеек (вход кластера (cx, cy), ячейка
+     * соседнего кластера в направлении (dx, dy)), через которые можно
+     * перейти между кластерами.  Результат зависит только от ячеек на
+     * общей границе, поэтому оба кластера выбирают одни и те же пары.
+     **/
+    private void collectTransitions(int cx, int cy, int dx, int dy)
+    {
+        if (dx != 0 && dy != 0)
+        {
+            // Угол: переход по диагонали в соседний по углу кластер.
+            int ax = (dx > 0) ? Math.min((cx + 1) * clusterSize, width) - 1
+                              : cx * clusterSize;
+            int ay = (dy > 0) ? Math.min((cy + 1) * clusterSize, height) - 1
+                              : cy * clusterSize;
+
+            if (isWalkable(ax, ay) && isWalkable(ax + dx, ay + dy))
+                addPair(ay * width + ax, (ay + dy) * width + ax + dx);
+
+            return;
+        }
+
+        boolean vertical = (dx != 0);
+
+        // Граница между "меньшим" и "большим" кластером.
+        int low = vertical ? Math.min(cx, cx + dx) : Math.min(cy, cy + dy);
+        int border = (low + 1) * clusterSize;
+        int span0 = (vertical ? cy : cx) * clusterSize;
+        int span1 = Math.min(span0 + clusterSize,
+                             vertical ? height : width) - 1;
+
+        // Ячейки по обе стороны границы: сторона этого кластера и соседа.
+        int ownSide = (dx + dy > 0) ? border - 1 : border;
+        int otherSide = (dx + dy > 0) ? border : border - 1;
+
+        int runStart = -1;
+        for (int p = span0; p <= span1 + 1; p++)
+        {
+            boolean open = (p <= span1) && isWalkable(vertical, ownSide, p) &&
+                isWalkable(vertical, otherSide, p);
+
+            if (open && runStart < 0)
+            {
+                runStart = p;
+            }
+            else if (!open && runStart >= 0)
+            {
+                int runEnd = p - 1;
+                if (runEnd - runStart + 1 < LONG_ENTRANCE)
+                {
+                    int mid = (runStart + runEnd) / 2;
+                    addPair(vertical, ownSide, mid, otherSide, mid);
+                }
+                else
+                {
+                    addPair(vertical, ownSide, runStart, otherSide, runStart);
+                    addPair(vertical, ownSide, runEnd, otherSide, runEnd);
+                }
+                runStart = -1;
+            }
+
+            // Диагональные переходы нужны только там, где нет прямых.
+            if (!open && p < span1 &&
+                !(isWalkable(vertical, ownSide, p + 1) &&
+                  isWalkable(vertical, otherSide, p + 1)))
+            {
+                if (isWalkable(vertical, ownSide, p) &&
+                    isWalkable(vertical, otherSide, p + 1))
+                    addPair(vertical, ownSide, p, otherSide, p + 1);
+
+                if (isWalkable(vertical, ownSide, p + 1) &&
+                    isWalkable(vertical, otherSide, p))
+                    addPair(vertical, ownSide, p + 1, otherSide, p);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the cell on the given side of a border is walkable.
+     * For a vertical border <code>side</code> is the column and
+     * <code>p</code> the row; for a horizontal border it is the reverse.
+     **/
+    private boolean isWalkable(boolean vertical, int side, int p)
+    {
+        return vertical ? isWalkable(side, p) : isWalkable(p, side);
+    }
+
+    /** Adds the pair of cells on either side of a border to the work list. **/
+    private void addPair(boolean vertical, int ownSide, int ownP,
+                         int otherSide, int otherP)
+    {
+        if (vertical)
+            addPair(ownP * width + ownSide, otherP * width + otherSide);
+        else
+            addPair(ownSide * width + ownP, otherSide * width + otherP);
+    }
+
+    /** Adds a pair of cells to the transition work list. **/
+    private void addPair(int a, int b)
+    {
+        if (pairCount == pairA.length)
+        {
+            pairA = Arrays.copyOf(pairA, pairCount * 2);
+            pairB = Arrays.copyOf(pairB, pairCount * 2);
+        }
+
+        pairA[pairCount] = a;
+        pairB[pairCount] = b;
+        pairCount++;
+    }
+
+    /** Returns true if the cell is on the map and can be entered. **/
+    private boolean isWalkable(int x, int y)
+    {
+        return map.contains(x, y) && isWalkable(y * width + x);
+    }
+
+    /** Returns true if the cell with the given index can be entered. **/
+    private boolean isWalkable(int cell)
+    {
+        return map.getCellValueAt(cell) < AStarPathfinder.COST_LIMIT;
+    }
+
+    /** Returns true if the cell is an entrance of the cluster. **/
+    private boolean isEntrance(int c, int cell)
+    {
+        return Arrays.binarySearch(entrances[c], cell) >= 0;
+    }
+
+    /** Returns the cost of a single step from one cell into its neighbor. **/
+    private float stepCost(int from, int to)
+    {
+        boolean diagonal = (from % width != to % width) &&
+                           (from / width != to / width);
+        float cost = diagonal ? GridPathfinder.DIAGONAL_COST : 1f;
+        return cost + map.getCellValueAt(to);
+    }
+
+    /** Returns the straight-line estimate from a cell to (tx, ty). **/
+    private float estimate(int cell, int tx, int ty)
+    {
+        return GridPathfinder.estimateTravelCost(cell % width, cell / width,
+                                                 tx, ty);
+    }
+
+    /** Returns the index of the cluster containing the cell. **/
+    private int clusterOf(int cell)
+    {
+        int x = cell % width;
+        int y = cell / width;
+        return (y / clusterSize) * clustersX + x / clusterSize;
+    }
+
+    /** Converts a map cell index into an index local to cluster c. **/
+    private int toLocal(int c, int cell)
+    {
+        int x0 = (c % clustersX) * clusterSize;
+        int y0 = (c / clustersX) * clusterSize;
+        int cw = Math.min(clusterSize, width - x0);
+        return (cell / width - y0) * cw + (cell % width - x0);
+    }
+
+    /** Converts an index local to cluster c into a map cell index. **/
+    private int toGlobal(int c, int local)
+    {
+        int x0 = (c % clustersX) * clusterSize;
+        int y0 = (c / clustersX) * clusterSize;
+        int cw = Math.min(clusterSize, width - x0);
+        return (y0 + local / cw) * width + x0 + local % cw;
+    }
+
+    /** Appends a cell to the path buffer. **/
+    private void appendPathCell(int cell)
+    {
+        if (pathLength == pathCells.length)
+            pathCells = Arrays.copyOf(pathCells, pathLength * 2);
+
+        pathCells[pathLength++] = cell;
+    }
+
+    /**
+     * Строит цепочку путевых точек по ячейкам буфера пути, складывая
+     * стоимости шагов в том же порядке, что и {@link AStarPathfinder}.
+     **/
+    private Waypoint buildPath()
+    {
+        int goal = pathCells[pathLength - 1];
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        Waypoint wp = null;
+        float cost = 0;
+        for (int i = 0; i < pathLength; i++)
+        {
+            int cell = pathCells[i];
+            int x = cell % width;
+            int y = cell / width;
+
+            if (i > 0)
+            {
+                int prev = pathCells[i - 1];
+                cost += (x != prev % width && y != prev / width)
+                    ? GridPathfinder.DIAGONAL_COST : 1f;
+                cost += map.getCellValueAt(cell);
+            }
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(cost,
+                GridPathfinder.estimateTravelCost(x, y, goalX, goalY));
+        }
+
+        return wp;
+    }
+}
@@ -0,0 +1,404 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс реализует инкрементальный поиск пути LPA* (Lifelong Planning
+ * A*).  В отличие от {@link GridPathfinder}, объект хранит результаты
+ * поиска между вызовами: для каждой ячейки известна стоимость лучшего
+ * пути от начала <code>g</code> и её оценка по соседям <code>rhs</code>.
+ * Объект регистрируется как {@link MapListener} своей карты, и изменение
+ * ячейки только пересчитывает её <code>rhs</code>; при следующем запросе
+ * заново раскрываются лишь ячейки, стоимость пути до которых изменилась.
+ * Поэтому после небольших правок карты новый путь находится за малую
+ * долю времени полного поиска.
+ *
+ * Правила перемещения и стоимости совпадают с {@link AStarPathfinder}.
+ * Состояние привязано к паре начало - конец: запрос с другими концами
+ * начинает поиск с нуля.  Объект не является потокобезопасным.
+ **/
+public class IncrementalPathfinder implements MapListener
+{
+    /** Стоимость недостижимой ячейки. **/
+    private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+    /**
+     * Относительный допуск при сравнении ключа ячейки с ключом цели.  На
+     * прямых участках без стоимости ключи ячеек пути равны ключу цели, а
+     * ошибки округления могут сделать их чуть больше; такие ячейки тоже
+     * нужно раскрыть, иначе путь будет восстановлен по устаревшим
+     * стоимостям.
+     **/
+    private static final float KEY_TOLERANCE = 1e-4f;
+
+    /** Карта, по которой выполняется поиск. **/
+    private Map2D map;
+
+    /** Ширина и высота карты. **/
+    private int width, height;
+
+    /** Начальная и конечная ячейки текущего состояния, или -1. **/
+    private int start = -1, goal = -1;
+
+    /** Стоимость лучшего найденного пути от начала до каждой ячейки. **/
+    private float[] g;
+
+    /**
+     * Стоимость пути до каждой ячейки через лучшего соседа:
+     * <code>min(g(u) + c(u, v))</code>.  Ячейка, у которой
+     * <code>g != rhs</code>, находится в открытом наборе.
+     **/
+    private float[] rhs;
+
+    /** Несогласованные ячейки, упорядоченные по ключу LPA*. **/
+    private IntMinHeap open;
+
+    /** Количество ячеек, раскрытых последним запросом. **/
+    private int expansions;
+
+
+    /** Creates a pathfinder for the map and subscribes to its changes. **/
+    public IncrementalPathfinder(Map2D map)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if ((long) map.getWidth() * map.getHeight() > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("map has too many cells for " +
+                "int cell indices: " + map.getWidth() + "x" + map.getHeight());
+        }
+
+        this.map = map;
+        width = map.getWidth();
+        height = map.getHeight();
+        map.addMapListener(this);
+    }
+
+    /** Returns the map that this pathfinder navigates. **/
+    public Map2D getMap()
+    {
+        return map;
+    }
+
+    /**
+     * Отписывается от изменений карты.  После вызова этого метода объект
+     * больше нельзя использовать.
+     **/
+    public void detach()
+    {
+        map.removeMapListener(this);
+    }
+
+    /**
+     * Возвращает количество ячеек, раскрытых последним запросом.  После
+     * небольшой правки карты оно обычно намного меньше, чем у полного
+     * поиска.
+     **/
+    public int getExpansions()
+    {
+        return expansions;
+    }
+
+    /**
+     * Пересчитывает оценки ячеек изменившейся области.  Стоимость ячейки
+     * входит только в стоимость шагов в эту ячейку, поэтому достаточно
+     * обновить <code>rhs</code> самих ячеек; пути через них исправит
+     * следующий запрос.
+     **/
+    public void mapChanged(Map2D map, int x, int y, int w, int h)
+    {
+        if (start < 0)
+            return;
+
+        // Если изменилась большая часть карты, дешевле начать с нуля.
+        if ((long) w * h * 4 > (long) width * height)
+        {
+            start = -1;
+            return;
+        }
+
+        for (int cy = y; cy < y + h; cy++)
+        {
+            for (int cx = x; cx < x + w; cx++)
+                updateVertex(cy * width + cx);
+        }
+    }
+
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * карты.  Возвращается последняя путевая точка пути или
+     * <code>null</code>, если путь не найден.
+     **/
+    public Waypoint computePath()
+    {
+        return computePath(map.getStart(), map.getFinish());
+    }
+
+    /**
+     * Пытается вычислить путь между двумя указанными местоположениями.
+     * Если концы совпадают с концами прошлого запроса, используются
+     * результаты прошлых поисков.
+     **/
+    public Waypoint computePath(Location startLoc, Location finishLoc)
+    {
+        int s = GridPathfinder.cellIndex(map, startLoc);
+        int t = GridPathfinder.cellIndex(map, finishLoc);
+
+        expansions = 0;
+        if (s != start || t != goal)
+            initialize(s, t);
+
+        if (map.isDisconnected(s, t))
+            return null;
+
+        computeShortestPath();
+
+        if (g[goal] == UNREACHABLE)
+            return null;
+
+        return buildPath();
+    }
+
+    /** Clears the search state and seeds it with the given endpoints. **/
+    private void initialize(int s, int t)
+    {
+        int cells = width * height;
+        if (g == null)
+        {
+            g = new float[cells];
+            rhs = new float[cells];
+            open = new IntMinHeap(cells);
+        }
+
+        Arrays.fill(g, UNREACHABLE);
+        Arrays.fill(rhs, UNREACHABLE);
+        open.clear();
+
+        start = s;
+        goal = t;
+        rhs[start] = 0;
+        open.update(start, key(start));
+    }
+
+    /**
+     * Возвращает ключ ячейки в открытом наборе:
+     * <code>min(g, rhs) + h</code>.  Так как начало и конец не меняются,
+     * ключ ячейки зависит только от её собственных стоимостей.
+     **/
+    private float key(int cell)
+    {
+        return Math.min(g[cell], rhs[cell]) + GridPathfinder.estimateTravelCost(
+            cell % width, cell / width, goal % width, goal / width);
+    }
+
+    /**
+     * Пересчитывает <code>rhs</code> ячейки по её соседям и помещает ячейку
+     * в открытый набор, если она стала несогласованной, или убирает её
+     * оттуда.
+     **/
+    private void updateVertex(int v)
+    {
+        if (v != start)
+            rhs[v] = bestNeighbourCost(v);
+
+        if (g[v] != rhs[v])
+            open.update(v, key(v));
+        else
+            open.remove(v);
+    }
+
+    /**
+     * Возвращает наименьшую стоимость пути в ячейку <code>v</code> через
+     * одного из её соседей, или {@link #UNREACHABLE}.  Шаги складываются в
+     * том же порядке, что и в {@link AStarPathfinder}.
+     **/
+    private float bestNeighbourCost(int v)
+    {
+        int value = map.getCellValueAt(v);
+        if (value >= AStarPathfinder.COST_LIMIT)
+            return UNREACHABLE;
+
+        int vx = v % width;
+        int vy = v / width;
+        float best = UNREACHABLE;
+
+        for (int y = vy - 1; y <= vy + 1; y++)
+        {
+            if (y < 0 || y >= height)
+                continue;
+
+            for (int x = vx - 1; x <= vx + 1; x++)
+            {
+                if (x < 0 || x >= width || (x == vx && y == vy))
+                    continue;
+
+                float gu = g[y * width + x];
+                if (gu == UNREACHABLE)
+                    continue;
+
+                float cost = gu +
+                    ((x != vx && y != vy) ? GridPathfinder.DIAGONAL_COST : 1f);
+                cost += value;
+
+                if (cost < best)
+                    best = cost;
+            }
+        }
+
+        return (best >= AStarPathfinder.COST_LIMIT) ? UNREACHABLE : best;
+    }
+
+    /**
+     * Раскрывает несогласованные ячейки, пока стоимость пути до цели не
+     * станет окончательной, то есть пока цель не согласована или в
+     * открытом наборе есть ячейки с ключом не больше ключа цели.  Ячейка,
+     * стоимость которой уменьшилась, улучшает оценки соседей; ячейка,
+     * стоимость которой выросла, сбрасывается, и оценки соседей
+     * пересчитываются.
+     **/
+    private void computeShortestPath()
+    {
+        while (!open.isEmpty())
+        {
+            float goalKey = key(goal);
+            if (open.peekKey() > goalKey + goalKey * KEY_TOLERANCE &&
+                g[goal] == rhs[goal])
+                break;
+
+            int u = open.poll();
+            expansions++;
+
+            int ux = u % width;
+            int uy = u / width;
+
+            if (g[u] > rhs[u])
+            {
+                g[u] = rhs[u];
+
+                for (int y = uy - 1; y <= uy + 1; y++)
+                {
+                    if (y < 0 || y >= height)
+                        continue;
+
+                    for (int x = ux - 1; x <= ux + 1; x++)
+                    {
+                        if (x < 0 || x >= width || (x == ux && y == uy))
+                            continue;
+
+                        int v = y * width + x;
+                        if (v == start)
+                            continue;
+
+                        int value = map.getCellValueAt(v);
+                        if (value >= AStarPathfinder.COST_LIMIT)
+                            continue;
+
+                        float cost = g[u] +
+                            ((x != ux && y != uy) ? GridPathfinder.DIAGONAL_COST
+                                                  : 1f);
+                        cost += value;
+
+                        if (cost < rhs[v] && cost < AStarPathfinder.COST_LIMIT)
+                        {
+                            rhs[v] = cost;
+                            updateVertex(v);
+                        }
+                    }
+                }
+            }
+            else
+            {
+                g[u] = UNREACHABLE;
+                updateVertex(u);
+
+                for (int y = uy - 1; y <= uy + 1; y++)
+                {
+                    if (y < 0 || y >= height)
+                        continue;
+
+                    for (int x = ux - 1; x <= ux + 1; x++)
+                    {
+                        if (x < 0 || x >= width || (x == ux && y == uy))
+                            continue;
+
+                        updateVertex(y * width + x);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Строит цепочку путевых точек от начала до цели, на каждом шаге
+     * переходя от ячейки к соседу, через которого достигается её
+     * стоимость, и возвращает последнюю путевую точку.
+     **/
+    private Waypoint buildPath()
+    {
+        int length = 1;
+        int[] cells = new int[64];
+        cells[0] = goal;
+
+        for (int v = goal; v != start; )
+        {
+            int vx = v % width;
+            int vy = v / width;
+            int value = map.getCellValueAt(v);
+            int best = -1;
+            float bestCost = UNREACHABLE;
+
+            for (int y = vy - 1; y <= vy + 1; y++)
+            {
+                if (y < 0 || y >= height)
+                    continue;
+
+                for (int x = vx - 1; x <= vx + 1; x++)
+                {
+                    if (x < 0 || x >= width || (x == vx && y == vy))
+                        continue;
+
+                    int u = y * width + x;
+                    if (g[u] == UNREACHABLE)
+                        continue;
+
+                    float cost = g[u] +
+                        ((x != vx && y != vy) ? GridPathfinder.DIAGONAL_COST
+                                              : 1f);
+                    cost += value;
+
+                    if (cost < bestCost)
+                    {
+                        bestCost = cost;
+                        best = u;
+                    }
+                }
+            }
+
+            // Стоимости всех ячеек пути окончательны, поэтому предыдущая
+            // ячейка всегда найдется; цикл возможен только при ошибке.
+            if (best < 0 || length == width * height)
+                throw new IllegalStateException("inconsistent search state");
+
+            if (length == cells.length)
+                cells = Arrays.copyOf(cells, length * 2);
+
+            cells[length++] = best;
+            v = best;
+        }
+
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        Waypoint wp = null;
+        for (int i = length - 1; i >= 0; i--)
+        {
+            int x = cells[i] % width;
+            int y = cells[i] / width;
+
+            wp = new Waypoint(new Location(x, y), wp);
+            wp.setCosts(g[cells[i]],
+                        GridPathfinder.estimateTravelCost(x, y, goalX, goalY));
+        }
+
+        return wp;
+    }
+}
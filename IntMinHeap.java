@@ -0,0 +1,238 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс представляет собой индексированную двоичную кучу целочисленных
+ * идентификаторов (обычно индексов ячеек карты), упорядоченную по
+ * вещественному ключу.  Для каждого идентификатора хранится его позиция
+ * в куче, поэтому добавление, уменьшение ключа и извлечение минимума
+ * выполняются за O(log n) без создания объектов.
+ **/
+public class IntMinHeap
+{
+    /** Идентификаторы, упорядоченные как двоичная куча. **/
+    private int[] heap;
+
+    /** Позиция каждого идентификатора в куче, или -1, если его там нет. **/
+    private int[] pos;
+
+    /** Текущий ключ каждого идентификатора. **/
+    private float[] keys;
+
+    /** Количество элементов в куче. **/
+    private int size;
+
+
+    /** Creates a new heap for identifiers in the range [0, capacity). **/
+    public IntMinHeap(int capacity)
+    {
+        heap = new int[Math.max(capacity, 16)];
+        pos = new int[capacity];
+        keys = new float[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    /** Creates a new, empty heap that is sized on first use. **/
+    public IntMinHeap()
+    {
+        this(0);
+    }
+
+    /**
+     * Гарантирует, что куча может хранить идентификаторы в диапазоне
+     * [0, capacity).  Буферы только растут, поэтому повторные вызовы
+     * с тем же размером ничего не выделяют.
+     **/
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity <= pos.length)
+            return;
+
+        int oldLength = pos.length;
+        pos = Arrays.copyOf(pos, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        Arrays.fill(pos, oldLength, capacity, -1);
+    }
+
+    /** Returns the number of identifiers currently in the heap. **/
+    public int size()
+    {
+        return size;
+    }
+
+    /** Returns true if the heap contains no identifiers. **/
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /** Returns true if the specified identifier is in the heap. **/
+    public boolean contains(int id)
+    {
+        return pos[id] >= 0;
+    }
+
+    /**
+     * Возвращает идентификатор, находящийся в позиции <code>i</code> кучи
+     * (от 0 до <code>size() - 1</code>).  Позиции не упорядочены, кроме
+     * того, что в позиции 0 находится минимум; метод нужен, чтобы обойти
+     * все элементы кучи.
+     **/
+    public int get(int i)
+    {
+        if (i < 0 || i >= size)
+        {
+            throw new IndexOutOfBoundsException("position " + i +
+                " is outside the heap of size " + size);
+        }
+
+        return heap[i];
+    }
+
+    /** Returns the key of the specified identifier. **/
+    public float getKey(int id)
+    {
+        return keys[id];
+    }
+
+    /**
+     * Возвращает идентификатор с наименьшим ключом, не удаляя его.
+     * Куча не должна быть пустой.
+     **/
+    public int peek()
+    {
+        if (size == 0)
+            throw new IllegalStateException("heap is empty");
+
+        return heap[0];
+    }
+
+    /** Returns the smallest key in the heap, which must not be empty. **/
+    public float peekKey()
+    {
+        return keys[peek()];
+    }
+
+    /**
+     * Добавляет идентификатор в кучу с указанным ключом.  Если
+     * идентификатор уже находится в куче, его ключ заменяется, и элемент
+     * перемещается вверх или вниз по куче.
+     **/
+    public void update(int id, float key)
+    {
+        keys[id] = key;
+
+        int i = pos[id];
+        if (i < 0)
+        {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, size * 2);
+
+            i = size++;
+            heap[i] = id;
+            pos[id] = i;
+            siftUp(i);
+        }
+        else
+        {
+            siftUp(i);
+            siftDown(pos[id]);
+        }
+    }
+
+    /**
+     * Удаляет из кучи и возвращает идентификатор с наименьшим ключом.
+     * Куча не должна быть пустой.
+     **/
+    public int poll()
+    {
+        int min = peek();
+        removeAt(0);
+        return min;
+    }
+
+    /** Removes the specified identifier from the heap, if it is present. **/
+    public void remove(int id)
+    {
+        int i = pos[id];
+        if (i >= 0)
+            removeAt(i);
+    }
+
+    /**
+     * Удаляет все элементы из кучи.  Время работы пропорционально числу
+     * элементов в куче, а не её ёмкости.
+     **/
+    public void clear()
+    {
+        for (int i = 0; i < size; i++)
+            pos[heap[i]] = -1;
+
+        size = 0;
+    }
+
+    /** Removes the element at heap position <code>i</code>. **/
+    private void removeAt(int i)
+    {
+        pos[heap[i]] = -1;
+
+        size--;
+        if (i == size)
+            return;
+
+        int last = heap[size];
+        heap[i] = last;
+        pos[last] = i;
+        siftUp(i);
+        siftDown(pos[last]);
+    }
+
+    /** Moves the element at heap position <code>i</code> toward the root. **/
+    private void siftUp(int i)
+    {
+        int id = heap[i];
+        float key = keys[id];
+
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key)
+                break;
+
+            heap[i] = p;
+            pos[p] = i;
+            i = parent;
+        }
+
+        heap[i] = id;
+        pos[id] = i;
+    }
+
+    /** Moves the element at heap position <code>i</code> toward the leaves. **/
+    private void siftDown(int i)
+    {
+        int id = heap[i];
+        float key = keys[id];
+
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+                child++;
+
+            int c = heap[child];
+            if (keys[c] >= key)
+                break;
+
+            heap[i] = c;
+            pos[c] = i;
+            i = child;
+        }
+
+        heap[i] = id;
+        pos[id] = i;
+    }
+}
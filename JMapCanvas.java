@@ -0,0 +1,365 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import javax.swing.*;
+
+
+/**
+ * Этот компонент Swing показывает всю карту сразу, вместо отдельного
+ * компонента для каждой ячейки.  Каждой ячейке соответствует одна точка
+ * изображения в памяти, которое при отрисовке увеличивается до размера
+ * ячейки на экране.  Изменение ячейки перекрашивает одну точку
+ * изображения и запрашивает перерисовку только прямоугольника этой
+ * ячейки, а отрисовка копирует только ту часть изображения, которая
+ * попадает в область перерисовки, поэтому компонент остается быстрым и
+ * на картах в миллионы ячеек.
+ *
+ * У каждой ячейки те же состояния, что и раньше: проходимая или нет,
+ * начальная или конечная, лежит ли на найденном пути.  Поверх них можно
+ * показать ход поиска: открытые и закрытые ячейки, которые отмечаются
+ * пачками методом {@link #markSearch}.  Координаты мыши переводятся в
+ * ячейку методом {@link #getCellAt}.
+ **/
+public class JMapCanvas extends JComponent
+{
+    /** Размер ячейки на экране по умолчанию в точках. **/
+    public static final int DEFAULT_CELL_SIZE = 12;
+
+    /** Начиная с этого размера ячейки между ячейками рисуется сетка. **/
+    private static final int MIN_GRID_CELL_SIZE = 4;
+
+    /** Флаги состояния ячейки. **/
+    private static final byte BLOCKED = 1, ENDPOINT = 2, PATH = 4, OPEN = 8,
+                              CLOSED = 16;
+
+    /** Цвета ячеек, как у прежних компонентов ячеек. **/
+    private static final int FREE_RGB = Color.WHITE.getRGB() & 0xFFFFFF;
+    private static final int BLOCKED_RGB = Color.RED.getRGB() & 0xFFFFFF;
+    private static final int ENDPOINT_RGB = Color.CYAN.getRGB() & 0xFFFFFF;
+    private static final int PATH_RGB = Color.GREEN.getRGB() & 0xFFFFFF;
+    private static final int OPEN_RGB = 0xFFF0A0;
+    private static final int CLOSED_RGB = 0xB8CCE8;
+
+    /** The number of cells in the X and Y directions. **/
+    private final int width, height;
+
+    /** The size of a cell on the screen, in pixels. **/
+    private final int cellSize;
+
+    /** Флаги состояния каждой ячейки, построчно. **/
+    private final byte[] state;
+
+    /** Изображение карты: одна точка на ячейку. **/
+    private final BufferedImage image;
+
+    /** Точки изображения, построчно, совпадают с индексами ячеек. **/
+    private final int[] pixels;
+
+    /** True if some cells are marked as open or closed by a search. **/
+    private boolean searchShown;
+
+
+    /**
+     * Создает компонент для карты указанного размера, в которой все
+     * ячейки проходимы, с указанным размером ячейки на экране.
+     **/
+    public JMapCanvas(int width, int height, int cellSize)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException(
+                "width and height must be positive values; got " + width +
+                "x" + height);
+        }
+
+        if (cellSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "cellSize must be positive; got " + cellSize);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.cellSize = cellSize;
+
+        state = new byte[width * height];
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, FREE_RGB);
+
+        setPreferredSize(new Dimension(width * cellSize, height * cellSize));
+        setOpaque(true);
+    }
+
+    /** Creates a canvas with the default cell size. **/
+    public JMapCanvas(int width, int height)
+    {
+        this(width, height, DEFAULT_CELL_SIZE);
+    }
+
+    /** Returns the number of cells in the X direction. **/
+    public int getMapWidth()
+    {
+        return width;
+    }
+
+    /** Returns the number of cells in the Y direction. **/
+    public int getMapHeight()
+    {
+        return height;
+    }
+
+    /** Returns the size of a cell on the screen, in pixels. **/
+    public int getCellSize()
+    {
+        return cellSize;
+    }
+
+    /**
+     * Возвращает ячейку под точкой компонента или <code>null</code>, если
+     * точка лежит за пределами карты.
+     **/
+    public Location getCellAt(Point p)
+    {
+        if (p.x < 0 || p.y < 0)
+            return null;
+
+        int x = p.x / cellSize;
+        int y = p.y / cellSize;
+        if (x >= width || y >= height)
+            return null;
+
+        return new Location(x, y);
+    }
+
+    /** Returns true if the cell is passable, or false otherwise. **/
+    public boolean isPassable(int x, int y)
+    {
+        return (state[index(x, y)] & BLOCKED) == 0;
+    }
+
+    /** Marks the cell as passable or not passable. **/
+    public void setPassable(int x, int y, boolean pass)
+    {
+        setFlag(x, y, BLOCKED, !pass);
+    }
+
+    /** Marks the cell as either being the starting or the ending cell. **/
+    public void setEndpoint(int x, int y, boolean end)
+    {
+        setFlag(x, y, ENDPOINT, end);
+    }
+
+    /** Returns true if the cell is marked as part of the path. **/
+    public boolean isPath(int x, int y)
+    {
+        return (state[index(x, y)] & PATH) != 0;
+    }
+
+    /** Marks the cell as part of the path discovered by the A* algorithm. **/
+    public void setPath(int x, int y, boolean path)
+    {
+        setFlag(x, y, PATH, path);
+    }
+
+    /**
+     * Отмечает непроходимыми ячейки, стоимость которых в указанной карте
+     * не меньше {@link AStarPathfinder#COST_LIMIT}, и проходимыми
+     * остальные, и перерисовывает весь компонент.
+     **/
+    public void setPassable(Map2D map)
+    {
+        if (map.getWidth() != width || map.getHeight() != height)
+        {
+            throw new IllegalArgumentException("map is " + map.getWidth() +
+                "x" + map.getHeight() + ", not " + width + "x" + height);
+        }
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            map.getRow(y, row, 0);
+            for (int x = 0; x < width; x++)
+            {
+                int i = y * width + x;
+                if (row[x] >= AStarPathfinder.COST_LIMIT)
+                    state[i] |= BLOCKED;
+                else
+                    state[i] &= ~BLOCKED;
+
+                pixels[i] = color(state[i]);
+            }
+        }
+
+        repaint();
+    }
+
+    /**
+     * Отмечает первые <code>count</code> ячеек массива (индексы
+     * <code>y * width + x</code>) как закрытые поиском, если
+     * <code>closed</code> равно true, или как открытые, и перерисовывает
+     * один прямоугольник, охватывающий все изменившиеся ячейки.  Закрытые
+     * ячейки показываются поверх открытых, а путь и препятствия - поверх
+     * обоих.
+     **/
+    public void markSearch(int[] cells, int count, boolean closed)
+    {
+        byte flag = closed ? CLOSED : OPEN;
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+
+        for (int k = 0; k < count; k++)
+        {
+            int i = cells[k];
+            if (i < 0 || i >= state.length)
+            {
+                throw new IllegalArgumentException("cell " + i +
+                    " is outside the map");
+            }
+
+            byte s = (byte) (state[i] | flag);
+            if (s == state[i])
+                continue;
+
+            state[i] = s;
+
+            int rgb = color(s);
+            if (pixels[i] == rgb)
+                continue;
+
+            pixels[i] = rgb;
+
+            int x = i % width;
+            int y = i / width;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        searchShown |= count > 0;
+        if (maxX >= 0)
+        {
+            repaint(minX * cellSize, minY * cellSize,
+                    (maxX - minX + 1) * cellSize,
+                    (maxY - minY + 1) * cellSize);
+        }
+    }
+
+    /** Removes the open and closed marks of the last search. **/
+    public void clearSearch()
+    {
+        if (!searchShown)
+            return;
+
+        for (int i = 0; i < state.length; i++)
+        {
+            if ((state[i] & (OPEN | CLOSED)) != 0)
+            {
+                state[i] &= ~(OPEN | CLOSED);
+                pixels[i] = color(state[i]);
+            }
+        }
+
+        searchShown = false;
+        repaint();
+    }
+
+    /**
+     * Перерисовывает только ячейки, попадающие в область отрисовки, и,
+     * если ячейки достаточно велики, сетку между ними.
+     **/
+    protected void paintComponent(Graphics g)
+    {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+        g.setColor(Color.GRAY);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int x0 = Math.max(0, clip.x / cellSize);
+        int y0 = Math.max(0, clip.y / cellSize);
+        int x1 = Math.min(width,
+                          (clip.x + clip.width + cellSize - 1) / cellSize);
+        int y1 = Math.min(height,
+                          (clip.y + clip.height + cellSize - 1) / cellSize);
+
+        if (x0 >= x1 || y0 >= y1)
+            return;
+
+        g.drawImage(image, x0 * cellSize, y0 * cellSize, x1 * cellSize,
+                    y1 * cellSize, x0, y0, x1, y1, null);
+
+        if (cellSize >= MIN_GRID_CELL_SIZE)
+        {
+            // Последний ряд точек каждой ячейки - линия сетки.
+            g.setColor(Color.GRAY);
+            for (int x = x0; x < x1; x++)
+            {
+                int px = (x + 1) * cellSize - 1;
+                g.drawLine(px, y0 * cellSize, px, y1 * cellSize - 1);
+            }
+
+            for (int y = y0; y < y1; y++)
+            {
+                int py = (y + 1) * cellSize - 1;
+                g.drawLine(x0 * cellSize, py, x1 * cellSize - 1, py);
+            }
+        }
+    }
+
+    /**
+     * Sets or clears a state flag of the cell and repaints the cell if its
+     * color changed.
+     **/
+    private void setFlag(int x, int y, byte flag, boolean on)
+    {
+        int i = index(x, y);
+        byte s = (byte) (on ? (state[i] | flag) : (state[i] & ~flag));
+        if (s == state[i])
+            return;
+
+        state[i] = s;
+
+        int rgb = color(s);
+        if (pixels[i] != rgb)
+        {
+            pixels[i] = rgb;
+            repaint(x * cellSize, y * cellSize, cellSize, cellSize);
+        }
+    }
+
+    /** Returns the color of a cell with the given state flags. **/
+    private static int color(byte s)
+    {
+        if ((s & BLOCKED) != 0)
+            return BLOCKED_RGB;
+
+        if ((s & ENDPOINT) != 0)
+            return ENDPOINT_RGB;
+
+        if ((s & PATH) != 0)
+            return PATH_RGB;
+
+        if ((s & CLOSED) != 0)
+            return CLOSED_RGB;
+
+        if ((s & OPEN) != 0)
+            return OPEN_RGB;
+
+        return FREE_RGB;
+    }
+
+    /** Returns the index of the cell, checking that it is on the map. **/
+    private int index(int x, int y)
+    {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+        {
+            throw new IllegalArgumentException("cell (" + x + ", " + y +
+                ") is outside the map");
+        }
+
+        return y * width + x;
+    }
+}
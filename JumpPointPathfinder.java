@@ -0,0 +1,369 @@
+/**
+ * Этот класс содержит реализацию поиска пути Jump Point Search (JPS) для
+ * карт, на которых все проходимые ячейки имеют одинаковую стоимость.
+ * Вместо того чтобы добавлять в открытый набор всех восьмерых соседей
+ * каждой ячейки, алгоритм "прыгает" по прямым и диагоналям до ячеек, где
+ * путь может повернуть (точек прыжка), поэтому на открытых участках карты
+ * раскрывается на порядки меньше вершин.
+ *
+ * Правила перемещения совпадают с {@link AStarPathfinder}: разрешены
+ * диагональные шаги, в том числе между двумя непроходимыми ячейками, а
+ * стоимость шага - длина шага плюс стоимость ячейки, в которую мы
+ * наступаем.  На картах с одинаковой стоимостью проходимых ячеек (см.
+ * {@link #isUniformCost}) найденный путь имеет ту же стоимость, что и путь
+ * алгоритма A*.  На других картах путь корректен, но может быть не
+ * самым дешевым.
+ **/
+public class JumpPointPathfinder
+{
+    /**
+     * Возвращает true, если все проходимые ячейки карты имеют одинаковую
+     * стоимость, то есть для карты можно использовать этот алгоритм.
+     * Ячейка считается проходимой, если её стоимость меньше
+     * {@link AStarPathfinder#COST_LIMIT}.  Метод просматривает всю карту,
+     * поэтому его результат стоит сохранять, пока карта не изменится.
+     **/
+    public static boolean isUniformCost(Map2D map)
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int[] row = new int[width];
+
+        boolean found = false;
+        int cost = 0;
+
+        for (int y = 0; y < height; y++)
+        {
+            map.getRow(y, row, 0);
+            for (int x = 0; x < width; x++)
+            {
+                if (row[x] >= AStarPathfinder.COST_LIMIT)
+                    continue;
+
+                if (!found)
+                {
+                    cost = row[x];
+                    found = true;
+                }
+                else if (row[x] != cost)
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Пытается вычислить путь между начальным и конечным местоположениями
+     * указанной карты, используя буферы переданного объекта состояния.
+     * Возвращается последняя путевая точка пути, в котором присутствует
+     * каждая пройденная ячейка, а не только точки прыжка; если путь не
+     * найден, возвращается <code>null</code>.
+     **/
+    public static Waypoint computePath(Map2D map, GridSearchState state)
+    {
+        return computePath(map, map.getStart(), map.getFinish(), state);
+    }
+
+    /**
+     * Пытается вычислить путь между двумя указанными местоположениями.
+     * Начало и конец, сохраненные в карте, не используются.
+     **/
+    public static Waypoint computePath(Map2D map, Location start,
+                                       Location finish, GridSearchState state)
+    {
+        if (state == null)
+            throw new NullPointerException("state cannot be null");
+
+        int startCell = GridPathfinder.cellIndex(map, start);
+        int finishCell = GridPathfinder.cellIndex(map, finish);
+
+        SearchStats stats = state.stats;
+        if (stats != null)
+            stats.beginSearch();
+
+        boolean found = search(map, startCell, finishCell, state);
+        if (stats != null)
+            stats.endSearch(state, found);
+
+        if (!found)
+            return null;
+
+        Waypoint path = buildPath(map, startCell, finishCell, state);
+        if (stats != null)
+            stats.endPath();
+
+        return path;
+    }
+
+    /**
+     * Выполняет поиск JPS от ячейки <code>start</code> до ячейки
+     * <code>goal</code>.  Возвращает true, если путь найден; в этом случае
+     * массив <code>parent</code> объекта состояния связывает точки прыжка
+     * от цели к началу.
+     **/
+    static boolean search(Map2D map, int start, int goal, GridSearchState state)
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        state.reset(width * height);
+        if (map.isDisconnected(start, goal))
+            return false;
+
+        IntMinHeap open = state.open;
+        float[] g = state.g;
+
+        state.setReached(start, 0, -1);
+        open.update(start, GridPathfinder.estimateTravelCost(
+            start % width, start / width, goalX, goalY));
+
+        while (!open.isEmpty())
+        {
+            int curr = open.poll();
+            if (curr == goal)
+                return true;
+
+            state.close(curr);
+            state.expansions++;
+
+            int x = curr % width;
+            int y = curr / width;
+
+            // Направление, в котором мы пришли в эту ячейку.
+            int dx = 0;
+            int dy = 0;
+            int prev = state.parent[curr];
+            if (prev >= 0)
+            {
+                dx = Integer.signum(x - prev % width);
+                dy = Integer.signum(y - prev / width);
+            }
+
+            for (int ndy = -1; ndy <= 1; ndy++)
+            {
+                for (int ndx = -1; ndx <= 1; ndx++)
+                {
+                    if (ndx == 0 && ndy == 0)
+                        continue;
+
+                    if (prev >= 0 && !isSuccessorDirection(map, x, y, dx, dy,
+                                                           ndx, ndy))
+                        continue;
+
+                    int jump = jump(map, x, y, ndx, ndy, goal);
+                    if (jump < 0 || state.isClosed(jump))
+                        continue;
+
+                    float cost = segmentCost(map, curr, jump, g[curr]);
+                    if (cost >= AStarPathfinder.COST_LIMIT)
+                        continue;
+
+                    if (state.isReached(jump) && g[jump] <= cost)
+                        continue;
+
+                    state.setReached(jump, cost, curr);
+                    open.update(jump, cost + GridPathfinder.estimateTravelCost(
+                        jump % width, jump / width, goalX, goalY));
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Возвращает true, если из ячейки (x, y), в которую мы пришли в
+     * направлении (dx, dy), нужно продолжить поиск в направлении
+     * (ndx, ndy).  Это естественные направления движения и направления
+     * на "вынужденных" соседей, которые появляются рядом с препятствиями.
+     **/
+    private static boolean isSuccessorDirection(Map2D map, int x, int y,
+                                                int dx, int dy,
+                                                int ndx, int ndy)
+    {
+        if (dx != 0 && dy != 0)
+        {
+            // Диагональ: продолжаем по ней и по обеим её составляющим.
+            if ((ndx == dx && ndy == dy) || (ndx == dx && ndy == 0) ||
+                (ndx == 0 && ndy == dy))
+                return true;
+
+            if (ndx == -dx && ndy == dy)
+                return !isWalkable(map, x - dx, y);
+
+            if (ndx == dx && ndy == -dy)
+                return !isWalkable(map, x, y - dy);
+
+            return false;
+        }
+
+        if (dx != 0)
+        {
+            // Горизонтальное движение.
+            if (ndx == dx && ndy == 0)
+                return true;
+
+            if (ndx == dx && ndy != 0)
+                return !isWalkable(map, x, y + ndy);
+
+            return false;
+        }
+
+        // Вертикальное движение.
+        if (ndx == 0 && ndy == dy)
+            return true;
+
+        if (ndy == dy && ndx != 0)
+            return !isWalkable(map, x + ndx, y);
+
+        return false;
+    }
+
+    /**
+     * Двигается из ячейки (x, y) в направлении (dx, dy), пока не встретит
+     * точку прыжка: цель, ячейку с вынужденным соседом или (для диагонали)
+     * ячейку, из которой прямой прыжок находит точку прыжка.  Возвращает
+     * индекс найденной ячейки или -1, если путь уперся в препятствие или
+     * край карты.
+     **/
+    private static int jump(Map2D map, int x, int y, int dx, int dy, int goal)
+    {
+        int width = map.getWidth();
+
+        while (true)
+        {
+            x += dx;
+            y += dy;
+
+            if (!isWalkable(map, x, y))
+                return -1;
+
+            int cell = y * width + x;
+            if (cell == goal)
+                return cell;
+
+            if (dx != 0 && dy != 0)
+            {
+                if ((isWalkable(map, x - dx, y + dy) &&
+                     !isWalkable(map, x - dx, y)) ||
+                    (isWalkable(map, x + dx, y - dy) &&
+                     !isWalkable(map, x, y - dy)))
+                    return cell;
+
+                if (jump(map, x, y, dx, 0, goal) >= 0 ||
+                    jump(map, x, y, 0, dy, goal) >= 0)
+                    return cell;
+            }
+            else if (dx != 0)
+            {
+                if ((isWalkable(map, x + dx, y + 1) &&
+                     !isWalkable(map, x, y + 1)) ||
+                    (isWalkable(map, x + dx, y - 1) &&
+                     !isWalkable(map, x, y - 1)))
+                    return cell;
+            }
+            else
+            {
+                if ((isWalkable(map, x + 1, y + dy) &&
+                     !isWalkable(map, x + 1, y)) ||
+                    (isWalkable(map, x - 1, y + dy) &&
+                     !isWalkable(map, x - 1, y)))
+                    return cell;
+            }
+        }
+    }
+
+    /**
+     * Возвращает true, если ячейка (x, y) лежит на карте и её стоимость
+     * меньше {@link AStarPathfinder#COST_LIMIT}.
+     **/
+    private static boolean isWalkable(Map2D map, int x, int y)
+    {
+        return map.contains(x, y) &&
+            map.getCellValueAt(y * map.getWidth() + x) < AStarPathfinder.COST_LIMIT;
+    }
+
+    /**
+     * Вычисляет стоимость пути от ячейки <code>from</code> до ячейки
+     * <code>to</code> по прямой или диагонали, начиная со стоимости
+     * <code>cost</code>.  Шаги складываются в том же порядке, что и в
+     * {@link AStarPathfinder}.
+     **/
+    private static float segmentCost(Map2D map, int from, int to, float cost)
+    {
+        int width = map.getWidth();
+        int dx = Integer.signum(to % width - from % width);
+        int dy = Integer.signum(to / width - from / width);
+        float step = (dx != 0 && dy != 0) ? GridPathfinder.DIAGONAL_COST : 1f;
+        int delta = dy * width + dx;
+
+        for (int cell = from; cell != to; )
+        {
+            cell += delta;
+            cost += step;
+            cost += map.getCellValueAt(cell);
+        }
+
+        return cost;
+    }
+
+    /**
+     * Строит цепочку путевых точек от начала до цели, восстанавливая все
+     * ячейки между соседними точками прыжка, и возвращает последнюю
+     * путевую точку.
+     **/
+    private static Waypoint buildPath(Map2D map, int start, int goal,
+                                      GridSearchState state)
+    {
+        int width = map.getWidth();
+
+        int jumps = 1;
+        for (int c = goal; c != start; c = state.parent[c])
+            jumps++;
+
+        int[] points = state.getPathBuffer(jumps);
+        int i = jumps;
+        for (int c = goal; i > 0; c = state.parent[c])
+            points[--i] = c;
+
+        int goalX = goal % width;
+        int goalY = goal / width;
+
+        Waypoint wp = new Waypoint(new Location(start % width, start / width),
+                                   null);
+        wp.setCosts(0, GridPathfinder.estimateTravelCost(
+            start % width, start / width, goalX, goalY));
+
+        for (i = 1; i < jumps; i++)
+        {
+            int from = points[i - 1];
+            int to = points[i];
+            int dx = Integer.signum(to % width - from % width);
+            int dy = Integer.signum(to / width - from / width);
+            float step = (dx != 0 && dy != 0) ? GridPathfinder.DIAGONAL_COST
+                                              : 1f;
+
+            float cost = wp.getPreviousCost();
+            int x = from % width;
+            int y = from / width;
+            while (y * width + x != to)
+            {
+                x += dx;
+                y += dy;
+                cost += step;
+                cost += map.getCellValueAt(y * width + x);
+
+                wp = new Waypoint(new Location(x, y), wp);
+                wp.setCosts(cost, GridPathfinder.estimateTravelCost(
+                    x, y, goalX, goalY));
+            }
+        }
+
+        return wp;
+    }
+}
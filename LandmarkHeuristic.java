@@ -0,0 +1,510 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Этот класс реализует эвристику ALT (A*, landmarks, triangle inequality)
+ * для повторных запросов по неизменной карте.  При предварительной
+ * обработке выбираются K опорных ячеек, и для каждой из них алгоритмом
+ * Дейкстры вычисляются стоимости путей от опорной ячейки до всех ячеек
+ * карты и от всех ячеек до нее.  По неравенству треугольника стоимость
+ * пути от ячейки u до ячейки t для любой опорной ячейки L не меньше
+ *
+ * <pre>
+ *   d(L, t) - d(L, u)   и   d(u, L) - d(t, L)
+ * </pre>
+ *
+ * Эвристика возвращает наибольшую из этих оценок и оценки базовой
+ * эвристики модели перемещения.  Около препятствий такая оценка гораздо
+ * точнее расстояния по прямой, поэтому на картах-лабиринтах поиск
+ * раскрывает на порядок меньше ячеек.
+ *
+ * Стоимость шага включает стоимость ячейки, в которую мы наступаем,
+ * поэтому стоимости "туда" и "обратно" различаются и хранятся в разных
+ * таблицах: 8 байт на ячейку для каждой опорной ячейки.  Таблицы можно
+ * записать в файл методом {@link #write(File)} и открыть методом
+ * {@link #read}, который отображает файл в память, не копируя таблицы в
+ * кучу.
+ *
+ * Опорные ячейки выбираются по очереди как самые удаленные от уже
+ * выбранных в той компоненте связности, где находится начальное
+ * местоположение карты; для ячеек других компонент используется только
+ * базовая эвристика.  Оценка допустима только для той карты, по которой
+ * она вычислена: после изменения стоимостей ячеек ({@link #isStale()})
+ * ее нужно вычислить заново.  Метод {@link #estimate} можно вызывать из
+ * разных потоков.
+ **/
+public class LandmarkHeuristic implements Heuristic
+{
+    /** Магическое число в начале файла опорных ячеек ("ALT1"). **/
+    public static final int MAGIC = 0x31544C41;
+
+    /** Текущая версия формата файла. **/
+    public static final int VERSION = 1;
+
+    /** Размер заголовка файла в байтах. **/
+    public static final int HEADER_SIZE = 64;
+
+    /** Количество опорных ячеек по умолчанию. **/
+    public static final int DEFAULT_LANDMARK_COUNT = 8;
+
+    /**
+     * Относительный запас, вычитаемый из оценки: таблицы вычисляются с
+     * другим порядком сложения, чем стоимости при поиске, и без запаса
+     * разность двух больших стоимостей могла бы превысить настоящую
+     * стоимость на ошибку округления.
+     **/
+    private static final float TOLERANCE = 1e-6f;
+
+    /** Стоимость недостижимой ячейки в таблицах. **/
+    private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+    /** Карта, по которой вычислены таблицы. **/
+    private final Map2D map;
+
+    /** Версия карты, по которой вычислены таблицы. **/
+    private final long mapVersion;
+
+    /** Размеры карты. **/
+    private final int width, height;
+
+    /** Индексы опорных ячеек. **/
+    private final int[] landmarks;
+
+    /**
+     * Для каждой опорной ячейки L: <code>from[i].get(c)</code> - стоимость
+     * пути от L до ячейки c, <code>to[i].get(c)</code> - от ячейки c до L.
+     **/
+    private final FloatBuffer[] from, to;
+
+    /** Эвристика модели перемещения, с которой сравнивается оценка. **/
+    private final Heuristic base;
+
+    /** Модель перемещения, в которой базовая эвристика заменена этой. **/
+    private final MovementModel model;
+
+
+    /** Creates a heuristic over the tables of the specified landmarks. **/
+    private LandmarkHeuristic(Map2D map, MovementModel model, int[] landmarks,
+                              FloatBuffer[] from, FloatBuffer[] to)
+    {
+        this.map = map;
+        this.mapVersion = map.getVersion();
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+        this.base = model.getHeuristic();
+        this.model = model.withHeuristic(this);
+    }
+
+    /**
+     * Вычисляет таблицы для <code>count</code> опорных ячеек при
+     * перемещении к восьми соседям.
+     **/
+    public static LandmarkHeuristic compute(Map2D map, int count)
+    {
+        return compute(map, count, MovementModel.EIGHT_CONNECTED);
+    }
+
+    /**
+     * Выбирает до <code>count</code> опорных ячеек и вычисляет для них
+     * таблицы стоимостей при указанной модели перемещения.  Время работы -
+     * 2 * count запусков алгоритма Дейкстры по всей карте.  Если в
+     * компоненте связности меньше ячеек, опорных ячеек тоже будет меньше.
+     **/
+    public static LandmarkHeuristic compute(Map2D map, int count,
+                                            MovementModel model)
+    {
+        if (model == null)
+            throw new NullPointerException("model cannot be null");
+
+        if (count <= 0)
+        {
+            throw new IllegalArgumentException(
+                "count must be positive; got " + count);
+        }
+
+        int cells = map.getWidth() * map.getHeight();
+        int seed = GridPathfinder.cellIndex(map, map.getStart());
+        if (map.getCellValueAt(seed) >= AStarPathfinder.COST_LIMIT)
+            seed = firstPassableCell(map);
+
+        int[] landmarks = new int[0];
+        FloatBuffer[] from = new FloatBuffer[0];
+        FloatBuffer[] to = new FloatBuffer[0];
+
+        if (seed >= 0)
+        {
+            IntMinHeap open = new IntMinHeap(cells);
+
+            // Первая опорная ячейка - самая удаленная от начальной, каждая
+            // следующая - самая удаленная от всех выбранных.
+            float[] minDist = new float[cells];
+            dijkstra(map, model, seed, false, minDist, open);
+            int next = farthestCell(minDist);
+
+            landmarks = new int[count];
+            from = new FloatBuffer[count];
+            to = new FloatBuffer[count];
+
+            int n = 0;
+            while (n < count && next >= 0)
+            {
+                float[] f = new float[cells];
+                float[] t = new float[cells];
+                dijkstra(map, model, next, false, f, open);
+                dijkstra(map, model, next, true, t, open);
+
+                landmarks[n] = next;
+                from[n] = FloatBuffer.wrap(f);
+                to[n] = FloatBuffer.wrap(t);
+                n++;
+
+                if (n == 1)
+                    System.arraycopy(f, 0, minDist, 0, cells);
+                else
+                {
+                    for (int c = 0; c < cells; c++)
+                        minDist[c] = Math.min(minDist[c], f[c]);
+                }
+
+                next = farthestCell(minDist);
+            }
+
+            landmarks = Arrays.copyOf(landmarks, n);
+            from = Arrays.copyOf(from, n);
+            to = Arrays.copyOf(to, n);
+        }
+
+        return new LandmarkHeuristic(map, model, landmarks, from, to);
+    }
+
+    /**
+     * Открывает файл таблиц, записанный методом {@link #write(File)} для
+     * указанной карты.  Таблицы отображаются в память и читаются из
+     * страничного кэша по мере обращения.  Модель перемещения должна быть
+     * той же, с которой таблицы были вычислены; иначе оценка может
+     * оказаться недопустимой.
+     **/
+    public static LandmarkHeuristic read(File file, Map2D map,
+                                         MovementModel model)
+        throws IOException
+    {
+        if (model == null)
+            throw new NullPointerException("model cannot be null");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE, file);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException(file + ": not a landmark file");
+
+            if (header.getInt(4) != VERSION)
+            {
+                throw new IOException(file +
+                    ": unsupported landmark file version " + header.getInt(4));
+            }
+
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            int count = header.getInt(16);
+
+            if (width != map.getWidth() || height != map.getHeight())
+            {
+                throw new IOException(file + ": landmarks are for a " + width +
+                    "x" + height + " map, not " + map.getWidth() + "x" +
+                    map.getHeight());
+            }
+
+            long cells = (long) width * height;
+            if (count < 0 || cells * 4 > Integer.MAX_VALUE)
+            {
+                throw new IOException(file + ": invalid landmark header, " +
+                    count + " landmarks");
+            }
+
+            long tableStart = HEADER_SIZE + 4L * count;
+            if (channel.size() < tableStart + 2 * count * cells * 4)
+                throw new IOException(file + ": truncated landmark data");
+
+            ByteBuffer list = readFully(channel, HEADER_SIZE, 4 * count, file);
+            int[] landmarks = new int[count];
+            FloatBuffer[] from = new FloatBuffer[count];
+            FloatBuffer[] to = new FloatBuffer[count];
+
+            long pos = tableStart;
+            for (int i = 0; i < count; i++)
+            {
+                landmarks[i] = list.getInt(4 * i);
+                if (landmarks[i] < 0 || landmarks[i] >= cells)
+                {
+                    throw new IOException(file + ": landmark cell " +
+                        landmarks[i] + " is outside the map");
+                }
+
+                from[i] = mapTable(channel, pos, cells);
+                pos += cells * 4;
+                to[i] = mapTable(channel, pos, cells);
+                pos += cells * 4;
+            }
+
+            return new LandmarkHeuristic(map, model, landmarks, from, to);
+        }
+        finally
+        {
+            // The mappings stay valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Записывает опорные ячейки и их таблицы в файл.  Формат файла (числа
+     * в порядке little-endian): магическое число, версия, ширина и высота
+     * карты, количество опорных ячеек K; со смещения {@link #HEADER_SIZE} -
+     * K индексов опорных ячеек, затем для каждой опорной ячейки таблицы
+     * "от нее" и "до нее" по одному 32-битному числу с плавающей точкой на
+     * ячейку.
+     **/
+    public void write(File file) throws IOException
+    {
+        int count = landmarks.length;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 * count);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(width);
+            header.putInt(height);
+            header.putInt(count);
+            header.position(HEADER_SIZE);
+            for (int i = 0; i < count; i++)
+                header.putInt(landmarks[i]);
+            header.flip();
+
+            long pos = 0;
+            while (header.hasRemaining())
+                pos += channel.write(header, pos);
+
+            // Таблицы записываются построчно, чтобы не копировать их
+            // целиком.
+            ByteBuffer buf = ByteBuffer.allocate(width * 4);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++)
+            {
+                pos = writeTable(channel, pos, from[i], buf);
+                pos = writeTable(channel, pos, to[i], buf);
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /** Returns the map the tables were computed for. **/
+    public Map2D getMap()
+    {
+        return map;
+    }
+
+    /**
+     * Возвращает true, если стоимости ячеек карты изменились после
+     * вычисления таблиц, и оценка может быть недопустимой.
+     **/
+    public boolean isStale()
+    {
+        return map.getVersion() != mapVersion;
+    }
+
+    /** Returns the number of landmarks. **/
+    public int getLandmarkCount()
+    {
+        return landmarks.length;
+    }
+
+    /** Returns the location of landmark i. **/
+    public Location getLandmark(int i)
+    {
+        return new Location(landmarks[i] % width, landmarks[i] / width);
+    }
+
+    /**
+     * Возвращает модель перемещения, для которой вычислены таблицы, с этой
+     * эвристикой вместо базовой.  Эту модель можно передать в
+     * {@link GridPathfinder} или {@link AStarPathfinder}.
+     **/
+    public MovementModel getMovementModel()
+    {
+        return model;
+    }
+
+    /**
+     * Возвращает нижнюю оценку стоимости пути из (x, y) в (destX, destY):
+     * наибольшую из оценок по опорным ячейкам и оценки базовой эвристики.
+     **/
+    public float estimate(int x, int y, int destX, int destY)
+    {
+        int u = y * width + x;
+        int t = destY * width + destX;
+        float best = base.estimate(x, y, destX, destY);
+
+        for (int i = 0; i < landmarks.length; i++)
+        {
+            // Если одна из стоимостей бесконечна, оценка по этой опорной
+            // ячейке ничего не дает.
+            float lu = from[i].get(u);
+            float lt = from[i].get(t);
+            if (lu < UNREACHABLE && lt < UNREACHABLE)
+                best = Math.max(best, lt - lu - lt * TOLERANCE);
+
+            float ul = to[i].get(u);
+            float tl = to[i].get(t);
+            if (ul < UNREACHABLE && tl < UNREACHABLE)
+                best = Math.max(best, ul - tl - ul * TOLERANCE);
+        }
+
+        return best;
+    }
+
+    /**
+     * Вычисляет алгоритмом Дейкстры стоимости путей от ячейки
+     * <code>source</code> до всех ячеек карты или, если
+     * <code>reverse</code> равно true, от всех ячеек до нее.  Обратный
+     * поиск проходит шаги в обратную сторону и платит стоимость ячейки, в
+     * которую шаг входит, то есть уже раскрытой.
+     **/
+    private static void dijkstra(Map2D map, MovementModel model, int source,
+                                 boolean reverse, float[] dist,
+                                 IntMinHeap open)
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int steps = model.getStepCount();
+        int sign = reverse ? -1 : 1;
+
+        Arrays.fill(dist, UNREACHABLE);
+        open.clear();
+        dist[source] = 0;
+        open.update(source, 0);
+
+        while (!open.isEmpty())
+        {
+            int curr = open.poll();
+            int currX = curr % width;
+            int currY = curr / width;
+            float currCost = dist[curr];
+            int currValue = map.getCellValueAt(curr);
+
+            for (int d = 0; d < steps; d++)
+            {
+                int x = currX + sign * model.getDX(d);
+                int y = currY + sign * model.getDY(d);
+                if (x < 0 || x >= width || y < 0 || y >= height)
+                    continue;
+
+                int next = y * width + x;
+                float cost = currCost + model.getStepCost(d);
+                cost += reverse ? currValue : map.getCellValueAt(next);
+
+                if (cost >= AStarPathfinder.COST_LIMIT || cost >= dist[next])
+                    continue;
+
+                dist[next] = cost;
+                open.update(next, cost);
+            }
+        }
+    }
+
+    /**
+     * Returns the reachable cell with the largest cost, or -1 if every
+     * reachable cell has cost 0.
+     **/
+    private static int farthestCell(float[] dist)
+    {
+        int best = -1;
+        float max = 0;
+        for (int c = 0; c < dist.length; c++)
+        {
+            if (dist[c] > max && dist[c] < UNREACHABLE)
+            {
+                max = dist[c];
+                best = c;
+            }
+        }
+
+        return best;
+    }
+
+    /** Returns the first cell that is not blocked, or -1. **/
+    private static int firstPassableCell(Map2D map)
+    {
+        int cells = map.getWidth() * map.getHeight();
+        for (int c = 0; c < cells; c++)
+        {
+            if (map.getCellValueAt(c) < AStarPathfinder.COST_LIMIT)
+                return c;
+        }
+
+        return -1;
+    }
+
+    /** Reads <code>length</code> bytes at the position of the channel. **/
+    private static ByteBuffer readFully(FileChannel channel, long pos,
+                                        int length, File file)
+        throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining())
+        {
+            if (channel.read(buf, pos + buf.position()) < 0)
+                throw new IOException(file + ": truncated landmark file");
+        }
+
+        return buf;
+    }
+
+    /** Maps a table of <code>cells</code> floats read-only. **/
+    private static FloatBuffer mapTable(FileChannel channel, long pos,
+                                        long cells) throws IOException
+    {
+        ByteBuffer bytes =
+            channel.map(FileChannel.MapMode.READ_ONLY, pos, cells * 4);
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        return bytes.asFloatBuffer();
+    }
+
+    /** Writes a table row by row and returns the position after it. **/
+    private long writeTable(FileChannel channel, long pos, FloatBuffer table,
+                            ByteBuffer buf) throws IOException
+    {
+        for (int y = 0; y < height; y++)
+        {
+            buf.clear();
+            for (int x = 0; x < width; x++)
+                buf.putFloat(table.get(y * width + x));
+            buf.flip();
+
+            while (buf.hasRemaining())
+                pos += channel.write(buf, pos);
+        }
+
+        return pos;
+    }
+}
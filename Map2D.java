@@ -1,9 +1,20 @@
+import java.util.ArrayList;
+
 /**
  * Этот класс представляет собой простую двумерную карту, состоящую из квадратных ячеек.
  * В каждой ячейке указывается стоимость обхода этой ячейки.
  **/
 public class Map2D
 {
+    /** Ширина ячейки в байтах для компактного хранения стоимостей 0..254. **/
+    public static final int CELL_WIDTH_BYTE = 1;
+
+    /** Ширина ячейки в байтах для хранения стоимостей 0..65534. **/
+    public static final int CELL_WIDTH_SHORT = 2;
+
+    /** Ширина ячейки в байтах для хранения произвольных стоимостей. **/
+    public static final int CELL_WIDTH_INT = 4;
+
     /** The width of the map. **/
     private int width;
 
@@ -12,8 +23,9 @@ public class Map2D
 
     /**
      * Фактические данные карты, необходимые алгоритму поиска пути для навигации.
+     * Ячейки хранятся построчно: ячейка (x, y) имеет индекс y * width + x.
      **/
-    private int[][] cells;
+    private CellStorage cells;
 
     /** Начальное местоположение для выполнения поиска пути A*. **/
     private Location start;
@@ -21,27 +33,85 @@ public class Map2D
     /** Конечное местоположение для выполнения поиска пути A*. **/
     private Location finish;
 
+    /** Объекты, которые уведомляются об изменении стоимостей ячеек. **/
+    private ArrayList<MapListener> listeners = new ArrayList<MapListener>();
+
+    /**
+     * Номер версии карты, который увеличивается при каждом изменении
+     * стоимостей ячеек.
+     **/
+    private long version;
+
+    /** Индекс связных компонент или null, если он не включен. **/
+    private ConnectivityIndex connectivity;
+
 
     /** Creates a new 2D map, with the specified width and height. **/
     public Map2D(int width, int height)
     {
-        if (width <= 0 || height <= 0)
-        {
-            throw new IllegalArgumentException(
-                    "width and height must be positive values; got " + width +
-                    "x" + height);
-        }
-        
+        this(width, height, CELL_WIDTH_INT);
+    }
+
+    /**
+     * Создает новую двумерную карту указанной ширины и высоты, в которой
+     * каждая ячейка занимает <code>cellWidth</code> байт (1, 2 или 4).
+     * Узкие форматы хранят только неотрицательные стоимости и значение
+     * {@link CellStorage#BLOCKED}; подробности см. в {@link CellStorage}.
+     **/
+    public Map2D(int width, int height, int cellWidth)
+    {
+        this(width, height, createStorage(width, height, cellWidth));
+    }
+
+    /**
+     * Создает карту указанной ширины и высоты поверх готового хранилища
+     * ячеек, например отображенного в память файла карты.
+     **/
+    Map2D(int width, int height, CellStorage storage)
+    {
+        this(width, height, storage, 0);
+    }
+
+    /**
+     * Создает карту поверх готового хранилища с указанным начальным
+     * номером версии, например неизменяемый снимок другой карты, который
+     * сохраняет ее номер версии.
+     **/
+    Map2D(int width, int height, CellStorage storage, long version)
+    {
+        checkSize(width, height);
+        if (storage == null)
+            throw new NullPointerException("storage cannot be null");
+
         this.width = width;
         this.height = height;
         
-        cells = new int[width][height];
+        cells = storage;
+        this.version = version;
         
         // Make up some coordinates for start and finish.
         start = new Location(0, height / 2);
         finish = new Location(width - 1, height / 2);
     }
 
+    /** Creates the in-memory cell storage for a new map of the given size. **/
+    private static CellStorage createStorage(int width, int height,
+                                             int cellWidth)
+    {
+        checkSize(width, height);
+        return CellStorage.create((long) width * height, cellWidth);
+    }
+
+    /** Checks that the map dimensions are positive. **/
+    private static void checkSize(int width, int height)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "width and height must be positive values; got " + width +
+                    "x" + height);
+        }
+    }
 
     /**
      * Этот вспомогательный метод проверяет указанные координаты, чтобы увидеть, находятся ли они
@@ -51,13 +121,13 @@ public class Map2D
      **/
     private void checkCoords(int x, int y)
     {
-        if (x < 0 || x > width)
+        if (x < 0 || x >= width)
         {
             throw new IllegalArgumentException("x must be in range [0, " + 
                     width + "), got " + x);
         }
         
-        if (y < 0 || y > height)
+        if (y < 0 || y >= height)
         {
             throw new IllegalArgumentException("y must be in range [0, " + 
                     height + "), got " + y);
@@ -75,6 +145,28 @@ public class Map2D
     {
         return height;
     }
+
+    /** Returns the storage that holds the cell values of this map. **/
+    CellStorage getStorage()
+    {
+        return cells;
+    }
+
+    /**
+     * Возвращает номер версии карты.  Он увеличивается при каждом изменении
+     * стоимостей ячеек, поэтому по нему можно определить, что результаты,
+     * вычисленные по карте раньше, могли устареть.
+     **/
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /** Returns the number of bytes used to store each cell of the map. **/
+    public int getCellWidth()
+    {
+        return cells.getCellWidth();
+    }
     
     /**
      * Возвращает значение true, если указанные координаты содержатся в пределах области карты.
@@ -95,7 +187,17 @@ public class Map2D
     public int getCellValue(int x, int y)
     {
         checkCoords(x, y);
-        return cells[x][y];
+        return cells.get((long) y * width + x);
+    }
+
+    /**
+     * Возвращает стоимость ячейки с индексом <code>y * width + x</code>.
+     * Координаты не проверяются; метод предназначен для внутренних циклов
+     * алгоритмов поиска, которые уже работают с индексами ячеек.
+     **/
+    public int getCellValueAt(int index)
+    {
+        return cells.get(index);
     }
     
     /** Returns the stored cost value for the specified cell. **/
@@ -108,7 +210,151 @@ public class Map2D
     public void setCellValue(int x, int y, int value)
     {
         checkCoords(x, y);
-        cells[x][y] = value;
+        cells.set((long) y * width + x, value);
+        fireMapChanged(x, y, 1, 1);
+    }
+
+    /**
+     * Копирует стоимости строки <code>y</code> в массив <code>dest</code>,
+     * начиная с позиции <code>offset</code>.
+     **/
+    public void getRow(int y, int[] dest, int offset)
+    {
+        getRegion(0, y, width, 1, dest, offset);
+    }
+
+    /**
+     * Задает стоимости всех ячеек строки <code>y</code> из массива
+     * <code>src</code>, начиная с позиции <code>offset</code>.
+     **/
+    public void setRow(int y, int[] src, int offset)
+    {
+        setRegion(0, y, width, 1, src, offset);
+    }
+
+    /**
+     * Копирует стоимости прямоугольной области <code>w</code> x <code>h</code>
+     * с левым верхним углом (x, y) в массив <code>dest</code> построчно,
+     * начиная с позиции <code>offset</code>.
+     **/
+    public void getRegion(int x, int y, int w, int h, int[] dest, int offset)
+    {
+        checkRegion(x, y, w, h);
+        for (int row = 0; row < h; row++)
+        {
+            cells.get((long) (y + row) * width + x, dest, offset + row * w, w);
+        }
+    }
+
+    /**
+     * Задает стоимости прямоугольной области <code>w</code> x <code>h</code>
+     * с левым верхним углом (x, y) из массива <code>src</code>, заполненного
+     * построчно, начиная с позиции <code>offset</code>.
+     **/
+    public void setRegion(int x, int y, int w, int h, int[] src, int offset)
+    {
+        checkRegion(x, y, w, h);
+        for (int row = 0; row < h; row++)
+        {
+            cells.set((long) (y + row) * width + x, src, offset + row * w, w);
+        }
+
+        if (w > 0 && h > 0)
+            fireMapChanged(x, y, w, h);
+    }
+
+    /**
+     * Регистрирует слушателя, который будет уведомляться после каждого
+     * изменения стоимостей ячеек этой карты.
+     **/
+    public void addMapListener(MapListener listener)
+    {
+        if (listener == null)
+            throw new NullPointerException("listener cannot be null");
+
+        listeners.add(listener);
+    }
+
+    /** Removes a listener previously registered with this map. **/
+    public void removeMapListener(MapListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Включает индекс связных компонент проходимых ячеек (см.
+     * {@link ConnectivityIndex}), по которому алгоритмы поиска сразу
+     * определяют, что цель недостижима.  Индекс строится при первом
+     * запросе и занимает четыре байта на ячейку.  Повторный вызов
+     * возвращает уже созданный индекс.
+     **/
+    public ConnectivityIndex enableConnectivityIndex()
+    {
+        if (connectivity == null)
+        {
+            connectivity = new ConnectivityIndex(this);
+            addMapListener(connectivity);
+        }
+
+        return connectivity;
+    }
+
+    /** Turns the connectivity index off and releases its memory. **/
+    public void disableConnectivityIndex()
+    {
+        if (connectivity != null)
+        {
+            removeMapListener(connectivity);
+            connectivity = null;
+        }
+    }
+
+    /** Returns the connectivity index, or null if it is not enabled. **/
+    public ConnectivityIndex getConnectivityIndex()
+    {
+        return connectivity;
+    }
+
+    /**
+     * Возвращает true, если включенный индекс связности показывает, что
+     * из ячейки <code>start</code> нельзя дойти до ячейки
+     * <code>finish</code>.  Без индекса всегда возвращает false.
+     **/
+    boolean isDisconnected(int start, int finish)
+    {
+        ConnectivityIndex index = connectivity;
+        return index != null && !index.isConnected(start, finish);
+    }
+
+    /**
+     * Увеличивает номер версии карты и уведомляет всех слушателей об
+     * изменении стоимостей прямоугольной области карты.
+     **/
+    void fireMapChanged(int x, int y, int w, int h)
+    {
+        version++;
+
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).mapChanged(this, x, y, w, h);
+    }
+
+    /**
+     * Этот вспомогательный метод проверяет, что прямоугольная область
+     * целиком лежит в пределах карты.
+     **/
+    private void checkRegion(int x, int y, int w, int h)
+    {
+        if (w < 0 || h < 0)
+        {
+            throw new IllegalArgumentException(
+                "region size must not be negative; got " + w + "x" + h);
+        }
+
+        if (w == 0 || h == 0)
+            return;
+
+        checkCoords(x, y);
+        checkCoords(x + w - 1, y + h - 1);
     }
     
     /**
@@ -0,0 +1,238 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Этот класс читает и записывает двоичный формат файла карты и открывает
+ * такие файлы как {@link Map2D}, отображенные в память.  Открытие файла
+ * занимает время O(1) независимо от размера карты: значения ячеек не
+ * копируются в кучу, а читаются из страничного кэша по мере обращения.
+ *
+ * Формат файла (все числа - 32-битные целые в порядке little-endian):
+ *
+ * <pre>
+ * смещение  поле
+ *  0        магическое число "MAP2" (байты 'M', 'A', 'P', '2')
+ *  4        версия формата, сейчас 1
+ *  8        ширина карты
+ * 12        высота карты
+ * 16        ширина ячейки в байтах: 1, 2 или 4
+ * 20        x начального местоположения
+ * 24        y начального местоположения
+ * 28        x конечного местоположения
+ * 32        y конечного местоположения
+ * 36..63    зарезервировано, нули
+ * 64        ячейки построчно: ячейка (x, y) находится по смещению
+ *           64 + (y * width + x) * cellWidth
+ * </pre>
+ *
+ * Ячейки шириной 1 и 2 байта хранятся как беззнаковые числа, а наибольший
+ * код (0xFF или 0xFFFF) обозначает {@link CellStorage#BLOCKED}, так же
+ * как в {@link CellStorage}.
+ **/
+public class MapFile
+{
+    /** Магическое число в начале файла карты ("MAP2" в little-endian). **/
+    public static final int MAGIC = 0x3250414D;
+
+    /** Текущая версия формата файла. **/
+    public static final int VERSION = 1;
+
+    /** Размер заголовка файла в байтах. **/
+    public static final int HEADER_SIZE = 64;
+
+
+    /** Opens the specified map file read-only. **/
+    public static Map2D open(File file) throws IOException
+    {
+        return open(file, false);
+    }
+
+    /**
+     * Открывает указанный файл карты, отображая его ячейки в память.  Если
+     * <code>writable</code> равно true, изменения ячеек через
+     * {@link Map2D#setCellValue} записываются прямо в файл; иначе попытка
+     * изменения выдает <code>UnsupportedOperationException</code>.
+     * Начальное и конечное местоположения берутся из заголовка.
+     **/
+    public static Map2D open(File file, boolean writable) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining())
+            {
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException(file + ": truncated map header");
+            }
+
+            if (header.getInt(0) != MAGIC)
+                throw new IOException(file + ": not a map file");
+
+            if (header.getInt(4) != VERSION)
+            {
+                throw new IOException(file + ": unsupported map file version " +
+                    header.getInt(4));
+            }
+
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            int cellWidth = header.getInt(16);
+
+            if (width <= 0 || height <= 0 ||
+                (cellWidth != 1 && cellWidth != 2 && cellWidth != 4))
+            {
+                throw new IOException(file + ": invalid map header " + width +
+                    "x" + height + ", cell width " + cellWidth);
+            }
+
+            long cells = (long) width * height;
+            if (channel.size() < HEADER_SIZE + cells * cellWidth)
+                throw new IOException(file + ": truncated map data");
+
+            CellStorage storage = new MappedCellStorage(channel, HEADER_SIZE,
+                cells, cellWidth, writable);
+
+            Map2D map = new Map2D(width, height, storage);
+            map.setStart(new Location(header.getInt(20), header.getInt(24)));
+            map.setFinish(new Location(header.getInt(28), header.getInt(32)));
+            return map;
+        }
+        finally
+        {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Создает новый файл карты указанного размера, в котором все ячейки
+     * имеют стоимость 0, и открывает его для записи.
+     **/
+    public static Map2D create(File file, int width, int height, int cellWidth)
+        throws IOException
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException(
+                "width and height must be positive values; got " + width +
+                "x" + height);
+        }
+
+        if (cellWidth != 1 && cellWidth != 2 && cellWidth != 4)
+        {
+            throw new IllegalArgumentException(
+                "cellWidth must be 1, 2 or 4; got " + cellWidth);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+
+            writeHeader(channel, width, height, cellWidth,
+                new Location(0, height / 2), new Location(width - 1, height / 2));
+            raf.setLength(HEADER_SIZE + (long) width * height * cellWidth);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        return open(file, true);
+    }
+
+    /**
+     * Записывает указанную карту, включая её начальное и конечное
+     * местоположения, в файл.  Карта записывается построчно, поэтому
+     * объем используемой памяти пропорционален ширине карты.
+     **/
+    public static void write(Map2D map, File file) throws IOException
+    {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int cellWidth = map.getCellWidth();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+
+            writeHeader(channel, width, height, cellWidth, map.getStart(),
+                        map.getFinish());
+
+            int[] row = new int[width];
+            ByteBuffer buf = ByteBuffer.allocate(width * cellWidth);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            long pos = HEADER_SIZE;
+            for (int y = 0; y < height; y++)
+            {
+                map.getRow(y, row, 0);
+
+                buf.clear();
+                for (int x = 0; x < width; x++)
+                {
+                    int code = CellStorage.encode(row[x], cellWidth);
+                    if (cellWidth == 1)
+                        buf.put((byte) code);
+                    else if (cellWidth == 2)
+                        buf.putShort((short) code);
+                    else
+                        buf.putInt(code);
+                }
+                buf.flip();
+
+                while (buf.hasRemaining())
+                    pos += channel.write(buf, pos);
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Записывает на диск изменения ячеек карты, открытой для записи.
+     * Для карт, не связанных с файлом, ничего не делает.
+     **/
+    public static void force(Map2D map)
+    {
+        CellStorage storage = map.getStorage();
+        if (storage instanceof MappedCellStorage)
+            ((MappedCellStorage) storage).force();
+    }
+
+    /** Writes the file header at the start of the channel. **/
+    private static void writeHeader(FileChannel channel, int width, int height,
+                                    int cellWidth, Location start,
+                                    Location finish) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(width);
+        header.putInt(height);
+        header.putInt(cellWidth);
+        header.putInt(start.xCoord);
+        header.putInt(start.yCoord);
+        header.putInt(finish.xCoord);
+        header.putInt(finish.yCoord);
+        header.clear();
+
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+    }
+}
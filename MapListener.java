@@ -0,0 +1,15 @@
+/**
+ * Этот интерфейс реализуют объекты, которым нужно знать об изменениях
+ * стоимостей ячеек {@link Map2D}, например структуры данных, построенные
+ * по карте заранее.  Слушатели регистрируются методом
+ * {@link Map2D#addMapListener}.
+ **/
+public interface MapListener
+{
+    /**
+     * Вызывается после того, как изменились стоимости ячеек прямоугольной
+     * области карты <code>width</code> x <code>height</code> с левым верхним
+     * углом (x, y).  При изменении одной ячейки область имеет размер 1 x 1.
+     **/
+    void mapChanged(Map2D map, int x, int y, int width, int height);
+}
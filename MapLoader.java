@@ -0,0 +1,498 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.imageio.ImageIO;
+
+/**
+ * Этот класс загружает карты из файлов изображений и текстовых сеток.
+ * Формат определяется по первым байтам файла:
+ *
+ * <ul>
+ * <li>двоичный формат {@link MapFile} - файл открывается как есть;</li>
+ * <li>PGM (P5), 8 или 16 бит на точку: черная точка (0) непроходима,
+ *     остальные стоят <code>maxval - яркость</code>, то есть белая точка
+ *     бесплатна;</li>
+ * <li>PNG: точки переводятся в яркость 0..255 по тем же правилам;</li>
+ * <li>текстовые карты MovingAI (<code>.map</code>): ячейки
+ *     <code>.</code>, <code>G</code> и <code>S</code> проходимы и стоят 0,
+ *     остальные (<code>@</code>, <code>O</code>, <code>T</code>,
+ *     <code>W</code>) непроходимы.</li>
+ * </ul>
+ *
+ * Строки PGM и MovingAI имеют постоянную длину, поэтому файл делится на
+ * полосы строк, которые декодируются параллельно в общем пуле потоков:
+ * каждая полоса отображает свою часть файла в память и записывает
+ * значения прямо в хранилище ячеек карты, без вызовов
+ * {@link Map2D#setCellValue} и проверок координат для каждой ячейки.
+ * PNG декодируется средствами ImageIO целиком в память, а в карту
+ * переводится так же параллельно.
+ *
+ * Карту, в которой больше ячеек, чем помещается в памяти, можно
+ * загрузить в новый файл карты методом {@link #load(File, File)}.
+ **/
+public class MapLoader
+{
+    /** Наибольший размер части файла, которую декодирует одна задача. **/
+    private static final long STRIPE_BYTES = 16L << 20;
+
+    /** Сколько байт начала файла читается для определения формата. **/
+    private static final int HEAD_BYTES = 4096;
+
+    /** Форматы файлов, которые декодируются построчно. **/
+    private static final int FORMAT_PGM = 0, FORMAT_MOVINGAI = 1;
+
+
+    /** Loads a map from the file into memory. **/
+    public static Map2D load(File file) throws IOException
+    {
+        return load(file, null);
+    }
+
+    /**
+     * Загружает карту из файла.  Если <code>mapFile</code> не равен
+     * <code>null</code>, значения ячеек записываются в новый файл карты
+     * {@link MapFile}, который возвращается открытым для записи; иначе
+     * карта создается в памяти.
+     **/
+    public static Map2D load(File file, File mapFile) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            int headLength = (int) Math.min(channel.size(), HEAD_BYTES);
+            ByteBuffer head = ByteBuffer.allocate(headLength);
+            head.order(ByteOrder.LITTLE_ENDIAN);
+            while (head.hasRemaining())
+            {
+                if (channel.read(head, head.position()) < 0)
+                    throw new IOException(file + ": unexpected end of file");
+            }
+
+            byte[] h = head.array();
+            if (headLength >= 4 && head.getInt(0) == MapFile.MAGIC)
+            {
+                Map2D map = MapFile.open(file);
+                if (mapFile == null)
+                    return map;
+
+                MapFile.write(map, mapFile);
+                return MapFile.open(mapFile, true);
+            }
+
+            if (headLength >= 8 && (h[0] & 0xFF) == 0x89 && h[1] == 'P' &&
+                h[2] == 'N' && h[3] == 'G')
+                return loadImage(file, mapFile);
+
+            Layout layout;
+            if (headLength >= 2 && h[0] == 'P' && h[1] == '5')
+                layout = parsePgmHeader(file, h, headLength);
+            else if (startsWith(h, headLength, "type"))
+                layout = parseMovingAiHeader(file, h, headLength);
+            else
+                throw new IOException(file + ": unknown map format");
+
+            long needed = layout.dataOffset +
+                (long) (layout.height - 1) * layout.rowBytes + layout.rowData;
+            if (channel.size() < needed)
+                throw new IOException(file + ": truncated map data");
+
+            Map2D map = createMap(layout.width, layout.height,
+                                  layout.cellWidth, mapFile);
+            try
+            {
+                ForkJoinPool.commonPool().invoke(new DecodeTask(file, channel,
+                    layout, map.getStorage(), 0, layout.height));
+            }
+            catch (UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+
+            return map;
+        }
+        finally
+        {
+            // The mappings stay valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /** Loads an image with ImageIO and converts its brightness to costs. **/
+    private static Map2D loadImage(File file, File mapFile) throws IOException
+    {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null)
+            throw new IOException(file + ": unsupported image");
+
+        Map2D map = createMap(image.getWidth(), image.getHeight(), 1, mapFile);
+        ForkJoinPool.commonPool().invoke(new ImageTask(image,
+            map.getStorage(), 0, image.getHeight()));
+        return map;
+    }
+
+    /** Creates the map that the decoded cells are written to. **/
+    private static Map2D createMap(int width, int height, int cellWidth,
+                                   File mapFile) throws IOException
+    {
+        if (mapFile != null)
+            return MapFile.create(mapFile, width, height, cellWidth);
+
+        return new Map2D(width, height, cellWidth);
+    }
+
+    /**
+     * Converts a brightness of 0..maxval to a cell cost: black is blocked
+     * and brighter points are cheaper.
+     **/
+    private static int brightnessCost(int value, int maxval)
+    {
+        return (value == 0) ? CellStorage.BLOCKED : maxval - value;
+    }
+
+    /**
+     * Разбирает заголовок PGM: <code>P5 ширина высота maxval</code>,
+     * разделенные пробелами, с комментариями от <code>#</code> до конца
+     * строки; после maxval следует ровно один пробельный символ.
+     **/
+    private static Layout parsePgmHeader(File file, byte[] h, int length)
+        throws IOException
+    {
+        int[] fields = new int[3];
+        int pos = 2;
+        for (int f = 0; f < 3; f++)
+        {
+            while (pos < length && (isSpace(h[pos]) || h[pos] == '#'))
+            {
+                if (h[pos] == '#')
+                {
+                    while (pos < length && h[pos] != '\n')
+                        pos++;
+                }
+                else
+                    pos++;
+            }
+
+            int start = pos;
+            long value = 0;
+            while (pos < length && h[pos] >= '0' && h[pos] <= '9' &&
+                   value <= Integer.MAX_VALUE)
+                value = value * 10 + (h[pos++] - '0');
+
+            if (pos == start || pos == length || !isSpace(h[pos]) ||
+                value <= 0 || value > Integer.MAX_VALUE)
+                throw new IOException(file + ": invalid PGM header");
+
+            fields[f] = (int) value;
+        }
+
+        int maxval = fields[2];
+        if (maxval > 65535)
+            throw new IOException(file + ": invalid PGM maxval " + maxval);
+
+        int bytes = (maxval < 256) ? 1 : 2;
+        Layout layout = new Layout(FORMAT_PGM, fields[0], fields[1], bytes,
+                                   pos + 1, (long) fields[0] * bytes, 0);
+        layout.maxval = maxval;
+        return layout;
+    }
+
+    /**
+     * Разбирает заголовок карты MovingAI: строки <code>type</code>,
+     * <code>height</code>, <code>width</code> и <code>map</code>, после
+     * которых следуют строки сетки.  Длина перевода строки (LF или CRLF)
+     * определяется по первой строке сетки.
+     **/
+    private static Layout parseMovingAiHeader(File file, byte[] h, int length)
+        throws IOException
+    {
+        int width = -1, height = -1;
+        int pos = 0;
+        while (true)
+        {
+            int end = pos;
+            while (end < length && h[end] != '\n')
+                end++;
+
+            if (end == length)
+                throw new IOException(file + ": invalid MovingAI header");
+
+            String line = new String(h, pos, end - pos, "US-ASCII").trim();
+            pos = end + 1;
+
+            try
+            {
+                if (line.startsWith("height "))
+                    height = Integer.parseInt(line.substring(7).trim());
+                else if (line.startsWith("width "))
+                    width = Integer.parseInt(line.substring(6).trim());
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException(file + ": invalid MovingAI header: " +
+                                      line);
+            }
+
+            if (line.equals("map"))
+                break;
+        }
+
+        if (width <= 0 || height <= 0)
+        {
+            throw new IOException(file + ": invalid MovingAI map size " +
+                width + "x" + height);
+        }
+
+        int terminator = 1;
+        if (pos + width < length && h[pos + width] == '\r')
+            terminator = 2;
+
+        return new Layout(FORMAT_MOVINGAI, width, height, 1, pos,
+                          (long) width + terminator, terminator);
+    }
+
+    /** Returns true if the head of the file starts with the text. **/
+    private static boolean startsWith(byte[] h, int length, String text)
+    {
+        if (length < text.length())
+            return false;
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            if (h[i] != text.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    /** Returns true for the whitespace characters allowed in PGM headers. **/
+    private static boolean isSpace(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+
+    /** Расположение строк сетки в файле. **/
+    private static class Layout
+    {
+        /** FORMAT_PGM or FORMAT_MOVINGAI. **/
+        final int format;
+
+        /** Размеры карты и ширина ячейки карты в байтах. **/
+        final int width, height, cellWidth;
+
+        /** Смещение первой строки сетки в файле. **/
+        final long dataOffset;
+
+        /** Расстояние между началами строк и длина данных строки. **/
+        final long rowBytes, rowData;
+
+        /** Длина перевода строки в конце каждой строки, кроме последней. **/
+        final int terminator;
+
+        /** Наибольшая яркость PGM. **/
+        int maxval;
+
+        Layout(int format, int width, int height, int cellWidth,
+               long dataOffset, long rowBytes, int terminator)
+        {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.cellWidth = cellWidth;
+            this.dataOffset = dataOffset;
+            this.rowBytes = rowBytes;
+            this.rowData = rowBytes - terminator;
+            this.terminator = terminator;
+        }
+    }
+
+
+    /**
+     * Задача, которая декодирует строки [from, to), деля диапазон
+     * пополам, пока часть файла не станет меньше {@link #STRIPE_BYTES}.
+     **/
+    private static class DecodeTask extends RecursiveAction
+    {
+        private final File file;
+        private final FileChannel channel;
+        private final Layout layout;
+        private final CellStorage storage;
+        private final int from;
+        private final int to;
+
+        DecodeTask(File file, FileChannel channel, Layout layout,
+                   CellStorage storage, int from, int to)
+        {
+            this.file = file;
+            this.channel = channel;
+            this.layout = layout;
+            this.storage = storage;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from == 1 ||
+                (long) (to - from) * layout.rowBytes <= STRIPE_BYTES)
+            {
+                try
+                {
+                    decode();
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new DecodeTask(file, channel, layout, storage, from, mid),
+                      new DecodeTask(file, channel, layout, storage, mid, to));
+        }
+
+        /** Maps the rows of this stripe and writes them to the storage. **/
+        private void decode() throws IOException
+        {
+            int width = layout.width;
+            long start = layout.dataOffset + from * layout.rowBytes;
+            long size = (to - from - 1) * layout.rowBytes + layout.rowData;
+            ByteBuffer buf =
+                channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+
+            int[] row = new int[width];
+            for (int y = from; y < to; y++)
+            {
+                int pos = (int) ((y - from) * layout.rowBytes);
+
+                if (layout.format == FORMAT_PGM)
+                    decodePgmRow(buf, pos, row);
+                else
+                    decodeMovingAiRow(buf, pos, y, row);
+
+                storage.set((long) y * width, row, 0, width);
+            }
+        }
+
+        /** Decodes one PGM row of 8- or 16-bit big-endian samples. **/
+        private void decodePgmRow(ByteBuffer buf, int pos, int[] row)
+        {
+            int maxval = layout.maxval;
+            if (maxval < 256)
+            {
+                for (int x = 0; x < row.length; x++)
+                    row[x] = brightnessCost(buf.get(pos + x) & 0xFF, maxval);
+            }
+            else
+            {
+                for (int x = 0; x < row.length; x++)
+                {
+                    row[x] = brightnessCost(
+                        buf.getShort(pos + 2 * x) & 0xFFFF, maxval);
+                }
+            }
+        }
+
+        /** Decodes one MovingAI row and checks its line terminator. **/
+        private void decodeMovingAiRow(ByteBuffer buf, int pos, int y,
+                                       int[] row) throws IOException
+        {
+            for (int x = 0; x < row.length; x++)
+            {
+                switch (buf.get(pos + x))
+                {
+                    case '.':
+                    case 'G':
+                    case 'S':
+                        row[x] = 0;
+                        break;
+
+                    case '@':
+                    case 'O':
+                    case 'T':
+                    case 'W':
+                        row[x] = CellStorage.BLOCKED;
+                        break;
+
+                    default:
+                        throw new IOException(file + ": row " + y +
+                            ": invalid map character at column " + x);
+                }
+            }
+
+            if (y < layout.height - 1)
+            {
+                int end = pos + row.length;
+                boolean ok = (layout.terminator == 1)
+                    ? buf.get(end) == '\n'
+                    : buf.get(end) == '\r' && buf.get(end + 1) == '\n';
+
+                if (!ok)
+                {
+                    throw new IOException(file + ": row " + y +
+                        " does not have " + row.length + " columns");
+                }
+            }
+        }
+    }
+
+
+    /** Задача, которая переводит строки изображения [from, to) в карту. **/
+    private static class ImageTask extends RecursiveAction
+    {
+        /** Если строк не больше этого значения, они переводятся сразу. **/
+        private static final int SEQUENTIAL_ROWS = 64;
+
+        private final BufferedImage image;
+        private final CellStorage storage;
+        private final int from;
+        private final int to;
+
+        ImageTask(BufferedImage image, CellStorage storage, int from, int to)
+        {
+            this.image = image;
+            this.storage = storage;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from <= SEQUENTIAL_ROWS)
+            {
+                int width = image.getWidth();
+                int[] rgb = new int[width];
+                int[] row = new int[width];
+                for (int y = from; y < to; y++)
+                {
+                    image.getRGB(0, y, width, 1, rgb, 0, width);
+                    for (int x = 0; x < width; x++)
+                    {
+                        int r = (rgb[x] >> 16) & 0xFF;
+                        int g = (rgb[x] >> 8) & 0xFF;
+                        int b = rgb[x] & 0xFF;
+                        int gray = (r * 299 + g * 587 + b * 114 + 500) / 1000;
+                        row[x] = brightnessCost(gray, 255);
+                    }
+
+                    storage.set((long) y * width, row, 0, width);
+                }
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new ImageTask(image, storage, from, mid),
+                      new ImageTask(image, storage, mid, to));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Хранилище ячеек карты, которое читает значения напрямую из файла,
+ * отображенного в память через {@link FileChannel#map}.  Данные не
+ * копируются в кучу: чтение ячейки обращается к страничному кэшу
+ * операционной системы.
+ *
+ * Один буфер NIO не может быть больше 2 ГБ, поэтому файл отображается
+ * плитками по {@link #TILE_BYTES} байт.  Размер плитки кратен ширине
+ * ячейки, так что ни одна ячейка не пересекает границу плиток.
+ **/
+public class MappedCellStorage extends CellStorage
+{
+    /** Число бит в смещении внутри плитки. **/
+    static final int TILE_SHIFT = 30;
+
+    /** Размер одной отображенной плитки в байтах (1 ГБ). **/
+    static final long TILE_BYTES = 1L << TILE_SHIFT;
+
+    /** Отображенные плитки файла в порядке следования. **/
+    private final MappedByteBuffer[] tiles;
+
+    /** The number of bytes used to store each cell. **/
+    private final int cellWidth;
+
+    /** True if the file was mapped for writing. **/
+    private final boolean writable;
+
+
+    /**
+     * Отображает в память <code>cells</code> ячеек шириной
+     * <code>cellWidth</code> байт, начиная со смещения <code>offset</code>
+     * указанного канала.  Канал можно закрыть после создания хранилища;
+     * отображение остается действительным.
+     **/
+    MappedCellStorage(FileChannel channel, long offset, long cells,
+                      int cellWidth, boolean writable) throws IOException
+    {
+        this.cellWidth = cellWidth;
+        this.writable = writable;
+
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+                                            : FileChannel.MapMode.READ_ONLY;
+
+        long bytes = cells * cellWidth;
+        int count = (int) ((bytes + TILE_BYTES - 1) >>> TILE_SHIFT);
+        tiles = new MappedByteBuffer[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            long start = (long) i << TILE_SHIFT;
+            long size = Math.min(TILE_BYTES, bytes - start);
+
+            tiles[i] = channel.map(mode, offset + start, size);
+            tiles[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    public int getCellWidth()
+    {
+        return cellWidth;
+    }
+
+    /** Returns true if cell values may be changed through this storage. **/
+    public boolean isWritable()
+    {
+        return writable;
+    }
+
+    public int get(long index)
+    {
+        long pos = index * cellWidth;
+        MappedByteBuffer tile = tiles[(int) (pos >>> TILE_SHIFT)];
+        int offset = (int) (pos & (TILE_BYTES - 1));
+
+        switch (cellWidth)
+        {
+            case 1:
+                return decode(tile.get(offset) & 0xFF, 1);
+
+            case 2:
+                return decode(tile.getShort(offset) & 0xFFFF, 2);
+
+            default:
+                return tile.getInt(offset);
+        }
+    }
+
+    public void set(long index, int value)
+    {
+        if (!writable)
+            throw new UnsupportedOperationException("map file is read-only");
+
+        int code = encode(value, cellWidth);
+
+        long pos = index * cellWidth;
+        MappedByteBuffer tile = tiles[(int) (pos >>> TILE_SHIFT)];
+        int offset = (int) (pos & (TILE_BYTES - 1));
+
+        switch (cellWidth)
+        {
+            case 1:
+                tile.put(offset, (byte) code);
+                break;
+
+            case 2:
+                tile.putShort(offset, (short) code);
+                break;
+
+            default:
+                tile.putInt(offset, code);
+                break;
+        }
+    }
+
+    /**
+     * Записывает измененные ячейки на диск.  Для хранилища только для
+     * чтения ничего не делает.
+     **/
+    public void force()
+    {
+        if (!writable)
+            return;
+
+        for (int i = 0; i < tiles.length; i++)
+            tiles[i].force();
+    }
+}
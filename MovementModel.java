@@ -0,0 +1,118 @@
+/**
+ * Этот класс описывает, как можно перемещаться между ячейками карты:
+ * список допустимых шагов (смещений к соседним ячейкам), таблицу
+ * стоимостей этих шагов и эвристику, согласованную с ними.  Стоимость
+ * шага берется из таблицы, а не вычисляется корнем, поэтому внутренний
+ * цикл поиска обходится без {@link Math#sqrt}.
+ *
+ * К стоимости шага, как и раньше, прибавляется стоимость ячейки, в
+ * которую мы наступаем.
+ **/
+public class MovementModel
+{
+    /**
+     * Четыре соседа (вверх, вниз, влево, вправо), шаг стоит 1, эвристика -
+     * манхэттенское расстояние.
+     **/
+    public static final MovementModel FOUR_CONNECTED = new MovementModel(
+        new int[] { 1, 0, -1, 0 },
+        new int[] { 0, 1, 0, -1 },
+        Heuristic.MANHATTAN);
+
+    /**
+     * Восемь соседей, как в {@link AStarPathfinder}: прямой шаг стоит 1,
+     * диагональный - корень из 2; эвристика - октильное расстояние.
+     **/
+    public static final MovementModel EIGHT_CONNECTED = new MovementModel(
+        new int[] { 1, 1, 0, -1, -1, -1, 0, 1 },
+        new int[] { 0, 1, 1, 1, 0, -1, -1, -1 },
+        Heuristic.OCTILE);
+
+    /** Смещения допустимых шагов. **/
+    private final int[] dx, dy;
+
+    /** Стоимость каждого шага без стоимости ячейки. **/
+    private final float[] stepCost;
+
+    /** Эвристика, согласованная с шагами. **/
+    private final Heuristic heuristic;
+
+
+    /**
+     * Создает модель перемещения с указанными шагами, каждый из которых
+     * стоит свою длину (1 для прямого шага и корень из 2 для
+     * диагонального), и указанной эвристикой.  Шаги должны вести к
+     * соседним ячейкам.
+     **/
+    public MovementModel(int[] dx, int[] dy, Heuristic heuristic)
+    {
+        if (dx.length != dy.length)
+            throw new IllegalArgumentException("dx and dy differ in length");
+
+        if (heuristic == null)
+            throw new NullPointerException("heuristic cannot be null");
+
+        this.dx = dx.clone();
+        this.dy = dy.clone();
+        this.heuristic = heuristic;
+
+        stepCost = new float[dx.length];
+        for (int i = 0; i < dx.length; i++)
+        {
+            if (Math.abs(dx[i]) > 1 || Math.abs(dy[i]) > 1 ||
+                (dx[i] == 0 && dy[i] == 0))
+            {
+                throw new IllegalArgumentException("step (" + dx[i] + ", " +
+                    dy[i] + ") does not lead to a neighbouring cell");
+            }
+
+            stepCost[i] = (dx[i] != 0 && dy[i] != 0)
+                ? GridPathfinder.DIAGONAL_COST : 1f;
+        }
+    }
+
+    /** Returns the number of allowed steps. **/
+    public int getStepCount()
+    {
+        return dx.length;
+    }
+
+    /** Returns the x offset of step i. **/
+    public int getDX(int i)
+    {
+        return dx[i];
+    }
+
+    /** Returns the y offset of step i. **/
+    public int getDY(int i)
+    {
+        return dy[i];
+    }
+
+    /** Returns the cost of step i, not including the cell value. **/
+    public float getStepCost(int i)
+    {
+        return stepCost[i];
+    }
+
+    /** Returns the heuristic that matches these steps. **/
+    public Heuristic getHeuristic()
+    {
+        return heuristic;
+    }
+
+    /**
+     * Возвращает модель с теми же шагами, но с другой эвристикой,
+     * например {@link LandmarkHeuristic}, вычисленной для этой модели.
+     **/
+    public MovementModel withHeuristic(Heuristic heuristic)
+    {
+        return new MovementModel(dx, dy, heuristic);
+    }
+
+    /** Estimates the cost between two cells with the model's heuristic. **/
+    public float estimate(int x, int y, int destX, int destY)
+    {
+        return heuristic.estimate(x, y, destX, destY);
+    }
+}
@@ -0,0 +1,321 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Этот класс кэширует результаты поиска пути по карте {@link Map2D}, чтобы
+ * повторные запросы с теми же началом и концом на неизменной карте не
+ * выполняли поиск заново.  Кэш ограничен по размеру: при переполнении
+ * вытесняется запись, к которой дольше всего не обращались (LRU).
+ *
+ * Кэш регистрируется как {@link MapListener} своей карты и при изменении
+ * области удаляет только те записи, которые могли устареть:
+ *
+ * <ul>
+ * <li>пути, проходящие через измененные ячейки;</li>
+ * <li>пути, для которых путь через измененную область мог бы оказаться
+ *     дешевле: расстояние по прямой от начала до области и от области до
+ *     конца меньше стоимости сохраненного пути;</li>
+ * <li>все записи "пути нет", так как изменение могло открыть проход.</li>
+ * </ul>
+ *
+ * Каждая запись хранит номер версии карты ({@link Map2D#getVersion()}), с
+ * которой она согласована; запись с другим номером считается устаревшей.
+ * Поиск выполняется алгоритмом {@link GridPathfinder}.  Возвращаемые
+ * цепочки путевых точек общие для всех, кто получил их из кэша, поэтому
+ * изменять их нельзя.  Методы объекта можно вызывать из разных потоков.
+ **/
+public class PathCache implements MapListener
+{
+    /** Размер кэша по умолчанию. **/
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /** Одна запись кэша: результат поиска между двумя ячейками. **/
+    private static class Entry
+    {
+        /** The path, or null if no path exists. **/
+        final Waypoint path;
+
+        /** The cost of the path. **/
+        final float cost;
+
+        /** Ограничивающий прямоугольник ячеек пути. **/
+        final int minX, minY, maxX, maxY;
+
+        /** Версия карты, с которой согласована запись. **/
+        long version;
+
+        Entry(Waypoint path, long version)
+        {
+            this.path = path;
+            this.version = version;
+
+            int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE;
+            int x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+            for (Waypoint wp = path; wp != null; wp = wp.getPrevious())
+            {
+                Location loc = wp.getLocation();
+                x0 = Math.min(x0, loc.xCoord);
+                y0 = Math.min(y0, loc.yCoord);
+                x1 = Math.max(x1, loc.xCoord);
+                y1 = Math.max(y1, loc.yCoord);
+            }
+
+            cost = (path != null) ? path.getPreviousCost() : 0;
+            minX = x0;
+            minY = y0;
+            maxX = x1;
+            maxY = y1;
+        }
+
+        /** Returns true if the path visits a cell of the region. **/
+        boolean crosses(int x, int y, int w, int h)
+        {
+            if (maxX < x || minX >= x + w || maxY < y || minY >= y + h)
+                return false;
+
+            for (Waypoint wp = path; wp != null; wp = wp.getPrevious())
+            {
+                Location loc = wp.getLocation();
+                if (loc.xCoord >= x && loc.xCoord < x + w &&
+                    loc.yCoord >= y && loc.yCoord < y + h)
+                    return true;
+            }
+
+            return false;
+        }
+    }
+
+    /** Карта, пути по которой кэшируются. **/
+    private Map2D map;
+
+    /** Максимальное количество записей в кэше. **/
+    private int maxSize;
+
+    /**
+     * Записи кэша по ключу <code>(start << 32) | finish</code>, где start
+     * и finish - индексы ячеек, в порядке последнего обращения.
+     **/
+    private LinkedHashMap<Long, Entry> entries;
+
+    /** Счетчики попаданий, промахов, вытеснений и инвалидаций. **/
+    private long hits, misses, evictions, invalidations;
+
+    /** Агрегированные метрики, куда сообщаются попадания, или null. **/
+    private volatile PathfinderMetrics metrics;
+
+
+    /** Creates a cache of the specified size for the map. **/
+    public PathCache(Map2D map, int maxSize)
+    {
+        if (map == null)
+            throw new NullPointerException("map cannot be null");
+
+        if (maxSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maxSize must be positive; got " + maxSize);
+        }
+
+        this.map = map;
+        this.maxSize = maxSize;
+
+        entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest)
+            {
+                if (size() <= PathCache.this.maxSize)
+                    return false;
+
+                evictions++;
+                return true;
+            }
+        };
+
+        map.addMapListener(this);
+    }
+
+    /** Creates a cache of the default size for the map. **/
+    public PathCache(Map2D map)
+    {
+        this(map, DEFAULT_MAX_SIZE);
+    }
+
+    /** Returns the map whose paths are cached. **/
+    public Map2D getMap()
+    {
+        return map;
+    }
+
+    /** Returns the maximum number of cached paths. **/
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /** Returns the number of cached paths. **/
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /** Returns the number of queries answered from the cache. **/
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /** Returns the number of queries that required a search. **/
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /** Returns the number of entries dropped because the cache was full. **/
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /** Returns the number of entries dropped because the map changed. **/
+    public synchronized long getInvalidationCount()
+    {
+        return invalidations;
+    }
+
+    /**
+     * Задает объект метрик, в который кэш будет сообщать о попаданиях и
+     * промахах, или <code>null</code>.
+     **/
+    public void setMetrics(PathfinderMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /** Returns the metrics this cache reports to, or null. **/
+    public PathfinderMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /** Removes all cached paths; the counters are kept. **/
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Отписывается от изменений карты.  После вызова этого метода объект
+     * больше нельзя использовать.
+     **/
+    public void detach()
+    {
+        map.removeMapListener(this);
+    }
+
+    /**
+     * Возвращает путь между начальным и конечным местоположениями карты
+     * из кэша или вычисляет и сохраняет его.
+     **/
+    public Waypoint computePath()
+    {
+        return computePath(map.getStart(), map.getFinish());
+    }
+
+    /**
+     * Возвращает путь между двумя указанными местоположениями из кэша или
+     * вычисляет его и сохраняет в кэше.  Если путь не существует,
+     * возвращается <code>null</code>; этот ответ тоже кэшируется.
+     **/
+    public Waypoint computePath(Location start, Location finish)
+    {
+        int s = GridPathfinder.cellIndex(map, start);
+        int t = GridPathfinder.cellIndex(map, finish);
+        Long key = Long.valueOf(((long) s << 32) | (t & 0xFFFFFFFFL));
+
+        PathfinderMetrics m = metrics;
+        long version;
+        synchronized (this)
+        {
+            version = map.getVersion();
+
+            Entry e = entries.get(key);
+            if (e != null && e.version == version)
+            {
+                hits++;
+                if (m != null)
+                    m.recordCacheHit();
+
+                return e.path;
+            }
+
+            if (e != null)
+            {
+                entries.remove(key);
+                invalidations++;
+            }
+
+            misses++;
+            if (m != null)
+                m.recordCacheMiss();
+        }
+
+        Waypoint path = GridPathfinder.computePath(map, start, finish,
+            GridSearchState.forCurrentThread());
+
+        synchronized (this)
+        {
+            // Если карта изменилась во время поиска, результат не
+            // сохраняется.
+            if (map.getVersion() == version)
+                entries.put(key, new Entry(path, version));
+        }
+
+        return path;
+    }
+
+    /**
+     * Удаляет записи, которые могли устареть после изменения области
+     * карты, и переводит остальные на новую версию карты.
+     **/
+    public synchronized void mapChanged(Map2D map, int x, int y, int w, int h)
+    {
+        int width = map.getWidth();
+        long version = map.getVersion();
+
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<Long, Entry> me = it.next();
+            Entry e = me.getValue();
+
+            long key = me.getKey().longValue();
+            int s = (int) (key >>> 32);
+            int t = (int) key;
+
+            if (e.path == null || e.crosses(x, y, w, h) ||
+                distanceToRegion(s % width, s / width, x, y, w, h) +
+                distanceToRegion(t % width, t / width, x, y, w, h) < e.cost)
+            {
+                it.remove();
+                invalidations++;
+            }
+            else
+            {
+                e.version = version;
+            }
+        }
+    }
+
+    /**
+     * Возвращает расстояние по прямой от ячейки (px, py) до ближайшей
+     * ячейки прямоугольной области.  Любой путь через область не может
+     * быть короче суммы таких расстояний от начала и от конца.
+     **/
+    private static float distanceToRegion(int px, int py, int x, int y,
+                                          int w, int h)
+    {
+        int dx = Math.max(Math.max(x - px, px - (x + w - 1)), 0);
+        int dy = Math.max(Math.max(y - py, py - (y + h - 1)), 0);
+        return (float) Math.sqrt((double) dx * dx + (double) dy * dy);
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Этот класс представляет собой один запрос на поиск пути: пару из
+ * начального и конечного местоположений.  Запросы используются пакетным
+ * поиском {@link BatchPathfinder}, которому не нужно изменять начало и
+ * конец, сохраненные в карте.
+ **/
+public class PathQuery
+{
+    /** The location where the path starts from. **/
+    private Location start;
+
+    /** The location where the path is supposed to finish. **/
+    private Location finish;
+
+
+    /** Creates a new query for a path between the two locations. **/
+    public PathQuery(Location start, Location finish)
+    {
+        if (start == null)
+            throw new NullPointerException("start cannot be null");
+
+        if (finish == null)
+            throw new NullPointerException("finish cannot be null");
+
+        this.start = start;
+        this.finish = finish;
+    }
+
+    /** Returns the starting location of the query. **/
+    public Location getStart()
+    {
+        return start;
+    }
+
+    /** Returns the finishing location of the query. **/
+    public Location getFinish()
+    {
+        return finish;
+    }
+}
@@ -0,0 +1,410 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Этот класс запускает набор измерений производительности алгоритмов
+ * поиска пути на картах нескольких типов и размеров и печатает таблицу
+ * результатов, чтобы можно было сравнивать реализации и отслеживать
+ * регрессии.
+ *
+ * Типы карт: открытое поле, лабиринт, случайные препятствия, местность
+ * с разной стоимостью ячеек и недостижимая цель.  Для каждой пары
+ * (карта, алгоритм) сначала выполняется прогрев, затем измерение; в
+ * таблице печатаются запросы в секунду, время одного запроса, количество
+ * раскрытых ячеек (если алгоритм его сообщает) и объем памяти, выделенной
+ * на один запрос.
+ *
+ * Использование: <code>java PathfinderBenchmark [размер ...]</code>.  По
+ * умолчанию используются карты 256, 512 и 1024 ячеек на сторону.
+ **/
+public class PathfinderBenchmark
+{
+    /** Длительность прогрева каждого измерения в миллисекундах. **/
+    private static final long WARMUP_MILLIS = 500;
+
+    /** Длительность каждого измерения в миллисекундах. **/
+    private static final long MEASURE_MILLIS = 1000;
+
+    /** Начальное значение генератора случайных чисел для карт. **/
+    private static final long SEED = 42;
+
+    /** Map sizes used when none are given on the command line. **/
+    private static final int[] DEFAULT_SIZES = { 256, 512, 1024 };
+
+
+    /**
+     * Алгоритм поиска пути, который можно измерить.  Подклассы сообщают,
+     * применим ли алгоритм к карте, и выполняют один запрос.
+     **/
+    private static abstract class Engine
+    {
+        /** The name printed in the results table. **/
+        final String name;
+
+        Engine(String name)
+        {
+            this.name = name;
+        }
+
+        /** Prepares the engine for queries on the map; may be expensive. **/
+        void prepare(Map2D map)
+        {
+        }
+
+        /** Returns true if the engine can be used on the map. **/
+        boolean supports(Map2D map)
+        {
+            return true;
+        }
+
+        /** Runs one query from the map's start to its finish. **/
+        abstract Waypoint run(Map2D map);
+
+        /** Returns the expansions of the last query, or -1 if unknown. **/
+        int expansions()
+        {
+            return -1;
+        }
+    }
+
+
+    /** Runs the benchmark suite and prints the results table. **/
+    public static void main(String[] args)
+    {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0)
+        {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        Engine[] engines = createEngines();
+
+        System.out.printf("%-12s %6s %-14s %12s %12s %12s %14s%n",
+            "map", "size", "engine", "ops/s", "ms/op", "expansions",
+            "bytes/op");
+
+        for (int s = 0; s < sizes.length; s++)
+        {
+            int n = sizes[s];
+            String[] names = { "open", "maze", "random", "weighted",
+                               "unreachable" };
+            Map2D[] maps = { openField(n), maze(n), randomObstacles(n),
+                             weightedTerrain(n), unreachable(n) };
+
+            for (int m = 0; m < maps.length; m++)
+            {
+                for (int e = 0; e < engines.length; e++)
+                {
+                    if (!engines[e].supports(maps[m]))
+                        continue;
+
+                    measure(names[m], n, maps[m], engines[e]);
+                }
+            }
+        }
+    }
+
+    /** Creates the list of engines that are measured. **/
+    private static Engine[] createEngines()
+    {
+        return new Engine[] {
+            new Engine("astar-object") {
+                Waypoint run(Map2D map)
+                {
+                    return AStarPathfinder.computePath(map);
+                }
+            },
+
+            new Engine("astar-grid") {
+                private GridSearchState state = new GridSearchState();
+
+                Waypoint run(Map2D map)
+                {
+                    return GridPathfinder.computePath(map, state);
+                }
+
+                int expansions()
+                {
+                    return state.getExpansions();
+                }
+            },
+
+            new Engine("astar-bidir") {
+                private GridSearchState forward = new GridSearchState();
+                private GridSearchState backward = new GridSearchState();
+
+                Waypoint run(Map2D map)
+                {
+                    return BidirectionalPathfinder.computePath(map,
+                        map.getStart(), map.getFinish(), forward, backward);
+                }
+
+                int expansions()
+                {
+                    return forward.getExpansions() + backward.getExpansions();
+                }
+            },
+
+            new Engine("astar-alt") {
+                private GridSearchState state = new GridSearchState();
+                private MovementModel model;
+
+                void prepare(Map2D map)
+                {
+                    model = LandmarkHeuristic.compute(map,
+                        LandmarkHeuristic.DEFAULT_LANDMARK_COUNT)
+                        .getMovementModel();
+                }
+
+                Waypoint run(Map2D map)
+                {
+                    return GridPathfinder.computePath(map, map.getStart(),
+                        map.getFinish(), state, model, 1f);
+                }
+
+                int expansions()
+                {
+                    return state.getExpansions();
+                }
+            },
+
+            new Engine("jps") {
+                private GridSearchState state = new GridSearchState();
+
+                boolean supports(Map2D map)
+                {
+                    return JumpPointPathfinder.isUniformCost(map);
+                }
+
+                Waypoint run(Map2D map)
+                {
+                    return JumpPointPathfinder.computePath(map, state);
+                }
+
+                int expansions()
+                {
+                    return state.getExpansions();
+                }
+            },
+
+            new Engine("hpa") {
+                private HierarchicalPathfinder hpa;
+
+                void prepare(Map2D map)
+                {
+                    hpa = new HierarchicalPathfinder(map);
+                }
+
+                Waypoint run(Map2D map)
+                {
+                    return hpa.computePath();
+                }
+            },
+        };
+    }
+
+    /**
+     * Измеряет один алгоритм на одной карте и печатает строку таблицы.
+     * Если алгоритм слишком медленный, измерение содержит хотя бы один
+     * запрос.
+     **/
+    private static void measure(String mapName, int size, Map2D map,
+                                Engine engine)
+    {
+        engine.prepare(map);
+
+        long end = System.nanoTime() + WARMUP_MILLIS * 1000000L;
+        do
+        {
+            engine.run(map);
+        }
+        while (System.nanoTime() < end);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocStart = allocatedBytes(threads);
+
+        long ops = 0;
+        long start = System.nanoTime();
+        end = start + MEASURE_MILLIS * 1000000L;
+        long now;
+        do
+        {
+            engine.run(map);
+            ops++;
+            now = System.nanoTime();
+        }
+        while (now < end);
+
+        long allocated = allocatedBytes(threads) - allocStart;
+        double seconds = (now - start) / 1e9;
+        int expansions = engine.expansions();
+
+        System.out.printf("%-12s %6d %-14s %12.1f %12.3f %12s %14s%n",
+            mapName, size, engine.name, ops / seconds, seconds * 1000 / ops,
+            (expansions < 0) ? "-" : String.valueOf(expansions),
+            (allocated < 0) ? "-" : String.valueOf(allocated / ops));
+    }
+
+    /**
+     * Возвращает количество байт, выделенных текущим потоком, или -1, если
+     * виртуальная машина не поддерживает такое измерение.
+     **/
+    private static long allocatedBytes(ThreadMXBean threads)
+    {
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+
+        com.sun.management.ThreadMXBean hotspot =
+            (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemorySupported())
+            return -1;
+
+        return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Creates an empty square map with start and finish in opposite corners. **/
+    static Map2D openField(int n)
+    {
+        Map2D map = new Map2D(n, n);
+        map.setStart(new Location(0, 0));
+        map.setFinish(new Location(n - 1, n - 1));
+        return map;
+    }
+
+    /**
+     * Создает лабиринт с коридорами шириной в одну ячейку, построенный
+     * обходом в глубину со случайным выбором направления.
+     **/
+    static Map2D maze(int n)
+    {
+        Map2D map = new Map2D(n, n);
+        int[] row = new int[n];
+        for (int x = 0; x < n; x++)
+            row[x] = CellStorage.BLOCKED;
+        for (int y = 0; y < n; y++)
+            map.setRow(y, row, 0);
+
+        // Комнаты лабиринта находятся в ячейках с нечетными координатами.
+        int rooms = (n - 1) / 2;
+        boolean[] visited = new boolean[rooms * rooms];
+        int[] stack = new int[rooms * rooms];
+        int top = 0;
+        Random random = new Random(SEED);
+        int[] dx = { 1, -1, 0, 0 };
+        int[] dy = { 0, 0, 1, -1 };
+
+        visited[0] = true;
+        stack[top++] = 0;
+        map.setCellValue(1, 1, 0);
+
+        while (top > 0)
+        {
+            int room = stack[top - 1];
+            int rx = room % rooms;
+            int ry = room / rooms;
+
+            int first = random.nextInt(4);
+            int next = -1;
+            for (int i = 0; i < 4 && next < 0; i++)
+            {
+                int d = (first + i) % 4;
+                int nx = rx + dx[d];
+                int ny = ry + dy[d];
+                if (nx >= 0 && ny >= 0 && nx < rooms && ny < rooms &&
+                    !visited[ny * rooms + nx])
+                {
+                    next = ny * rooms + nx;
+                    map.setCellValue(2 * rx + 1 + dx[d], 2 * ry + 1 + dy[d], 0);
+                    map.setCellValue(2 * nx + 1, 2 * ny + 1, 0);
+                }
+            }
+
+            if (next < 0)
+            {
+                top--;
+            }
+            else
+            {
+                visited[next] = true;
+                stack[top++] = next;
+            }
+        }
+
+        map.setStart(new Location(1, 1));
+        map.setFinish(new Location(2 * rooms - 1, 2 * rooms - 1));
+        return map;
+    }
+
+    /** Creates a map where about a quarter of the cells are blocked. **/
+    static Map2D randomObstacles(int n)
+    {
+        Map2D map = new Map2D(n, n);
+        Random random = new Random(SEED);
+        int[] row = new int[n];
+
+        for (int y = 0; y < n; y++)
+        {
+            for (int x = 0; x < n; x++)
+                row[x] = (random.nextInt(4) == 0) ? CellStorage.BLOCKED : 0;
+            map.setRow(y, row, 0);
+        }
+
+        map.setStart(new Location(0, 0));
+        map.setFinish(new Location(n - 1, n - 1));
+        map.setCellValue(0, 0, 0);
+        map.setCellValue(n - 1, n - 1, 0);
+        return map;
+    }
+
+    /**
+     * Создает местность, разбитую на блоки 16 x 16 ячеек со случайной
+     * стоимостью от 0 до 9 в каждом блоке.
+     **/
+    static Map2D weightedTerrain(int n)
+    {
+        Map2D map = new Map2D(n, n);
+        Random random = new Random(SEED);
+        int blocks = (n + 15) / 16;
+        int[] costs = new int[blocks * blocks];
+        for (int i = 0; i < costs.length; i++)
+            costs[i] = random.nextInt(10);
+
+        int[] row = new int[n];
+        for (int y = 0; y < n; y++)
+        {
+            for (int x = 0; x < n; x++)
+                row[x] = costs[(y / 16) * blocks + x / 16];
+            map.setRow(y, row, 0);
+        }
+
+        map.setStart(new Location(0, 0));
+        map.setFinish(new Location(n - 1, n - 1));
+        return map;
+    }
+
+    /**
+     * Создает открытое поле, в котором конечная ячейка окружена стеной,
+     * так что поиск должен просмотреть всю карту, прежде чем сдаться.
+     **/
+    static Map2D unreachable(int n)
+    {
+        Map2D map = openField(n);
+        int fx = n - 1 - n / 4;
+        int fy = n - 1 - n / 4;
+
+        for (int y = fy - 1; y <= fy + 1; y++)
+        {
+            for (int x = fx - 1; x <= fx + 1; x++)
+            {
+                if (x != fx || y != fy)
+                    map.setCellValue(x, y, CellStorage.BLOCKED);
+            }
+        }
+
+        map.setFinish(new Location(fx, fy));
+        return map;
+    }
+}
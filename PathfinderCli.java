@@ -0,0 +1,268 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.StringTokenizer;
+
+/**
+ * Этот класс запускает поиск пути без графического интерфейса: загружает
+ * карту из файла любого формата, который понимает {@link MapLoader}, и
+ * решает запросы, которые читаются построчно из файла или из
+ * стандартного ввода.  Результат каждого запроса печатается сразу,
+ * поэтому объем памяти не зависит от количества запросов, и по логу
+ * запросов можно измерить пропускную способность без дисплея.
+ *
+ * Использование:
+ *
+ * <pre>
+ * java PathfinderCli [параметры] файл-карты [файл-запросов]
+ *
+ *   -engine grid|bidir|jps   алгоритм поиска, по умолчанию grid
+ *   -connectivity            включить индекс связности карты
+ *   -no-paths                не печатать ячейки путей
+ *   -record каталог          записать ход каждого поиска в кадры PNG
+ *                            (только для grid), см. {@link SearchRecorder}
+ * </pre>
+ *
+ * Если файл запросов не указан или указан как <code>-</code>, запросы
+ * читаются из стандартного ввода.  Каждая строка запроса содержит четыре
+ * числа <code>sx sy fx fy</code>; пустые строки и строки, начинающиеся с
+ * <code>#</code>, пропускаются.  Для каждого запроса печатается строка
+ *
+ * <pre>
+ * sx sy fx fy стоимость длина раскрытия микросекунды [x,y x,y ...]
+ * </pre>
+ *
+ * Если путь не найден, вместо стоимости печатается <code>-</code>, а
+ * длина равна 0.  Итоговая статистика печатается в стандартный поток
+ * ошибок.
+ **/
+public class PathfinderCli
+{
+    /** Алгоритмы поиска, которые можно выбрать параметром -engine. **/
+    private static final String[] ENGINES = { "grid", "bidir", "jps" };
+
+
+    /** Runs the queries and prints the results. **/
+    public static void main(String[] args) throws IOException
+    {
+        String engine = "grid";
+        boolean connectivity = false;
+        boolean printPaths = true;
+        File recordDir = null;
+
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-") &&
+               !args[i].equals("-"); i++)
+        {
+            if (args[i].equals("-engine") && i + 1 < args.length)
+                engine = args[++i];
+            else if (args[i].equals("-connectivity"))
+                connectivity = true;
+            else if (args[i].equals("-no-paths"))
+                printPaths = false;
+            else if (args[i].equals("-record") && i + 1 < args.length)
+                recordDir = new File(args[++i]);
+            else
+                usage("unknown option " + args[i]);
+        }
+
+        if (!isEngine(engine))
+            usage("unknown engine " + engine);
+
+        if (i == args.length || args.length - i > 2)
+            usage(null);
+
+        Map2D map = MapLoader.load(new File(args[i]));
+        if (connectivity)
+            map.enableConnectivityIndex();
+
+        if (engine.equals("jps") && !JumpPointPathfinder.isUniformCost(map))
+            usage("jps requires a map with uniform cell costs");
+
+        if (recordDir != null && !engine.equals("grid"))
+            usage("-record is only supported by the grid engine");
+
+        Reader in;
+        if (i + 1 == args.length || args[i + 1].equals("-"))
+            in = new InputStreamReader(System.in, "UTF-8");
+        else
+        {
+            in = new InputStreamReader(new FileInputStream(args[i + 1]),
+                                       "UTF-8");
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out, "UTF-8")));
+
+        try
+        {
+            run(map, engine, printPaths, recordDir, new BufferedReader(in),
+                out);
+        }
+        finally
+        {
+            in.close();
+            out.flush();
+        }
+    }
+
+    /**
+     * Читает запросы из <code>in</code>, решает их выбранным алгоритмом,
+     * печатает результаты в <code>out</code> и итоговую статистику в
+     * стандартный поток ошибок.  Если <code>recordDir</code> не равен
+     * <code>null</code>, ход каждого поиска записывается в этот каталог
+     * кадрами PNG.
+     **/
+    static void run(Map2D map, String engine, boolean printPaths,
+                    File recordDir, BufferedReader in, PrintWriter out)
+        throws IOException
+    {
+        PathfinderMetrics metrics = new PathfinderMetrics();
+        GridSearchState state = new GridSearchState();
+        GridSearchState backward = new GridSearchState();
+        SearchStats stats = new SearchStats(metrics);
+        state.setStats(stats);
+        if (recordDir != null)
+        {
+            state.setSearchListener(new SearchRecorder(recordDir),
+                SearchRecorder.DEFAULT_FRAME_EXPANSIONS, 0);
+        }
+
+        int width = map.getWidth();
+        long lineNumber = 0;
+        long skipped = 0;
+        long begin = System.nanoTime();
+
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#"))
+                continue;
+
+            Location start, finish;
+            try
+            {
+                StringTokenizer tok = new StringTokenizer(line);
+                if (tok.countTokens() != 4)
+                {
+                    throw new IllegalArgumentException(
+                        "expected four numbers sx sy fx fy");
+                }
+
+                start = new Location(Integer.parseInt(tok.nextToken()),
+                                     Integer.parseInt(tok.nextToken()));
+                finish = new Location(Integer.parseInt(tok.nextToken()),
+                                      Integer.parseInt(tok.nextToken()));
+
+                if (!map.contains(start) || !map.contains(finish))
+                {
+                    throw new IllegalArgumentException(
+                        "location is outside the map");
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Включая NumberFormatException: строка пропускается.
+                System.err.println("line " + lineNumber + ": skipped: " +
+                                   e.getMessage());
+                skipped++;
+                continue;
+            }
+
+            GridPath path;
+            if (engine.equals("grid"))
+                path = GridPathfinder.findPath(map, start, finish, state);
+            else
+            {
+                Waypoint wp;
+                if (engine.equals("bidir"))
+                {
+                    wp = BidirectionalPathfinder.computePath(map, start,
+                        finish, state, backward);
+                }
+                else
+                {
+                    wp = JumpPointPathfinder.computePath(map, start, finish,
+                                                         state);
+                }
+
+                path = (wp != null) ? GridPath.fromWaypoint(wp, width) : null;
+            }
+
+            out.print(start.xCoord + " " + start.yCoord + " " +
+                      finish.xCoord + " " + finish.yCoord + " ");
+            if (path != null)
+                out.print(path.getCost() + " " + path.length());
+            else
+                out.print("- 0");
+            out.print(" " + stats.getExpansions() + " " +
+                      stats.getTotalNanos() / 1000);
+
+            if (printPaths && path != null)
+            {
+                Iterator<Location> it = path.iterator();
+                while (it.hasNext())
+                {
+                    Location loc = it.next();
+                    out.print(" " + loc.xCoord + "," + loc.yCoord);
+                }
+            }
+            out.println();
+        }
+
+        out.flush();
+        printSummary(metrics, skipped, System.nanoTime() - begin);
+    }
+
+    /** Prints the totals of the run to standard error. **/
+    private static void printSummary(PathfinderMetrics metrics, long skipped,
+                                     long nanos)
+    {
+        long queries = metrics.getQueryCount();
+        double seconds = nanos / 1e9;
+
+        System.err.printf("queries: %d, found: %d, not found: %d, " +
+            "skipped lines: %d%n", queries,
+            queries - metrics.getFailedQueryCount(),
+            metrics.getFailedQueryCount(), skipped);
+        System.err.printf("time: %.1f ms, %.1f queries/s%n", seconds * 1000,
+            (seconds > 0) ? queries / seconds : 0.0);
+        System.err.printf("latency: mean %.1f us, p50 <= %d us, " +
+            "p99 <= %d us%n", metrics.getMeanLatencyMicros(),
+            metrics.getLatencyP50Micros(), metrics.getLatencyP99Micros());
+        System.err.printf("expansions: %d%n", metrics.getTotalExpansions());
+    }
+
+    /** Returns true if the name is one of the supported engines. **/
+    private static boolean isEngine(String name)
+    {
+        for (int i = 0; i < ENGINES.length; i++)
+        {
+            if (ENGINES[i].equals(name))
+                return true;
+        }
+
+        return false;
+    }
+
+    /** Prints the usage message and an optional error, then exits. **/
+    private static void usage(String error)
+    {
+        if (error != null)
+            System.err.println("PathfinderCli: " + error);
+
+        System.err.println("usage: java PathfinderCli " +
+            "[-engine grid|bidir|jps] [-connectivity] [-no-paths] " +
+            "[-record dir] map-file [query-file]");
+        System.exit(2);
+    }
+}
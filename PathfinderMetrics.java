@@ -0,0 +1,215 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Этот класс накапливает метрики многих поисков пути: количество запросов,
+ * раскрытых ячеек и операций с кучей, попадания в кэш путей, время фаз и
+ * гистограмму задержек.  Поиски добавляются через {@link SearchStats},
+ * созданный с этим объектом, а попадания и промахи кэша - через
+ * {@link PathCache#setMetrics}.  Все счетчики атомарные, поэтому один
+ * объект можно использовать из многих потоков одновременно.
+ *
+ * Гистограмма задержек имеет {@link #HISTOGRAM_BUCKETS} корзин: в корзину
+ * 0 попадают запросы короче 1 микросекунды, в корзину i > 0 - запросы от
+ * 2<sup>i-1</sup> до 2<sup>i</sup> микросекунд, в последнюю - все более
+ * долгие.  Процентили вычисляются по верхним границам корзин.
+ *
+ * Метод {@link #register} публикует метрики как MBean в платформенном
+ * сервере JMX.
+ **/
+public class PathfinderMetrics implements PathfinderMetricsMBean
+{
+    /** Количество корзин гистограммы задержек. **/
+    public static final int HISTOGRAM_BUCKETS = 32;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong expansions = new AtomicLong();
+    private final AtomicLong heapOperations = new AtomicLong();
+    private final AtomicLong maxPeakOpen = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private final AtomicLong pathNanos = new AtomicLong();
+
+    /** Количество запросов в каждой корзине гистограммы задержек. **/
+    private final AtomicLongArray histogram =
+        new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+
+    /**
+     * Регистрирует этот объект в платформенном сервере MBean под именем
+     * <code>pathfinder:type=PathfinderMetrics,name=</code><i>name</i> и
+     * возвращает это имя.
+     **/
+    public ObjectName register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName(
+            "pathfinder:type=PathfinderMetrics,name=" + ObjectName.quote(name));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /** Adds the statistics of one finished search. **/
+    public void record(SearchStats stats)
+    {
+        queries.incrementAndGet();
+        if (!stats.isFound())
+            failed.incrementAndGet();
+
+        expansions.addAndGet(stats.getExpansions());
+        heapOperations.addAndGet(stats.getHeapOperations());
+        searchNanos.addAndGet(stats.getSearchNanos());
+        pathNanos.addAndGet(stats.getPathNanos());
+
+        long peak = stats.getPeakOpenSize();
+        long max = maxPeakOpen.get();
+        while (peak > max && !maxPeakOpen.compareAndSet(max, peak))
+            max = maxPeakOpen.get();
+
+        histogram.incrementAndGet(bucket(stats.getTotalNanos() / 1000));
+    }
+
+    /** Counts a query answered from a path cache. **/
+    public void recordCacheHit()
+    {
+        cacheHits.incrementAndGet();
+    }
+
+    /** Counts a query that a path cache had to compute. **/
+    public void recordCacheMiss()
+    {
+        cacheMisses.incrementAndGet();
+    }
+
+    /** Returns the histogram bucket for a latency in microseconds. **/
+    private static int bucket(long micros)
+    {
+        if (micros <= 0)
+            return 0;
+
+        int b = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(b, HISTOGRAM_BUCKETS - 1);
+    }
+
+    public long getQueryCount()
+    {
+        return queries.get();
+    }
+
+    public long getFailedQueryCount()
+    {
+        return failed.get();
+    }
+
+    public long getTotalExpansions()
+    {
+        return expansions.get();
+    }
+
+    public long getTotalHeapOperations()
+    {
+        return heapOperations.get();
+    }
+
+    public long getMaxPeakOpenSize()
+    {
+        return maxPeakOpen.get();
+    }
+
+    public long getCacheHitCount()
+    {
+        return cacheHits.get();
+    }
+
+    public long getCacheMissCount()
+    {
+        return cacheMisses.get();
+    }
+
+    public long getTotalSearchMicros()
+    {
+        return searchNanos.get() / 1000;
+    }
+
+    public long getTotalPathMicros()
+    {
+        return pathNanos.get() / 1000;
+    }
+
+    public double getMeanLatencyMicros()
+    {
+        long n = queries.get();
+        if (n == 0)
+            return 0;
+
+        return (searchNanos.get() + pathNanos.get()) / 1000.0 / n;
+    }
+
+    public long getLatencyP50Micros()
+    {
+        return percentile(0.5);
+    }
+
+    public long getLatencyP99Micros()
+    {
+        return percentile(0.99);
+    }
+
+    public long[] getLatencyHistogram()
+    {
+        long[] counts = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = histogram.get(i);
+
+        return counts;
+    }
+
+    /**
+     * Возвращает верхнюю границу корзины гистограммы, в которой находится
+     * указанная доля запросов, в микросекундах, или 0, если запросов нет.
+     **/
+    public long percentile(double fraction)
+    {
+        long[] counts = getLatencyHistogram();
+        long total = 0;
+        for (int i = 0; i < counts.length; i++)
+            total += counts[i];
+
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+                return (i == 0) ? 1 : 1L << i;
+        }
+
+        return 1L << (HISTOGRAM_BUCKETS - 1);
+    }
+
+    public void reset()
+    {
+        queries.set(0);
+        failed.set(0);
+        expansions.set(0);
+        heapOperations.set(0);
+        maxPeakOpen.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        searchNanos.set(0);
+        pathNanos.set(0);
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+            histogram.set(i, 0);
+    }
+}
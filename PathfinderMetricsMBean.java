@@ -0,0 +1,48 @@
+/**
+ * Этот интерфейс описывает атрибуты и операции {@link PathfinderMetrics},
+ * доступные через JMX (например, в JConsole или VisualVM).
+ **/
+public interface PathfinderMetricsMBean
+{
+    /** Returns the number of recorded searches. **/
+    long getQueryCount();
+
+    /** Returns the number of recorded searches that found no path. **/
+    long getFailedQueryCount();
+
+    /** Returns the total number of expanded cells. **/
+    long getTotalExpansions();
+
+    /** Returns the total number of open set heap operations. **/
+    long getTotalHeapOperations();
+
+    /** Returns the largest open set seen by any recorded search. **/
+    long getMaxPeakOpenSize();
+
+    /** Returns the number of path cache hits. **/
+    long getCacheHitCount();
+
+    /** Returns the number of path cache misses. **/
+    long getCacheMissCount();
+
+    /** Returns the total time spent in the search phase, in microseconds. **/
+    long getTotalSearchMicros();
+
+    /** Returns the total time spent building paths, in microseconds. **/
+    long getTotalPathMicros();
+
+    /** Returns the mean query latency, in microseconds. **/
+    double getMeanLatencyMicros();
+
+    /** Returns the approximate median query latency, in microseconds. **/
+    long getLatencyP50Micros();
+
+    /** Returns the approximate 99th percentile latency, in microseconds. **/
+    long getLatencyP99Micros();
+
+    /** Returns the latency histogram; see {@link PathfinderMetrics}. **/
+    long[] getLatencyHistogram();
+
+    /** Resets all counters and the histogram. **/
+    void reset();
+}
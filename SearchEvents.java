@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Этот класс собирает события поиска в пачки для {@link SearchListener}.
+ * Поиск сообщает о каждой раскрытой и открытой ячейке, а слушатель
+ * получает накопленные ячейки только тогда, когда раскрыто не меньше
+ * <code>batchSize</code> ячеек и с прошлой пачки прошло не меньше
+ * <code>minIntervalNanos</code> наносекунд.  Время проверяется не чаще
+ * одного раза на <code>batchSize</code> раскрытых ячеек.  Пока интервал не
+ * истек, буферы растут, так что ни одна ячейка не теряется.
+ **/
+class SearchEvents
+{
+    /** Размер пачки по умолчанию. **/
+    static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Интервал между пачками по умолчанию, около 30 кадров в секунду.
+     **/
+    static final long DEFAULT_MIN_INTERVAL_NANOS = 33000000L;
+
+    /** The listener that receives the batches. **/
+    final SearchListener listener;
+
+    /** Наименьшее число раскрытых ячеек в пачке. **/
+    private final int batchSize;
+
+    /** Наименьший интервал между пачками в наносекундах. **/
+    private final long minIntervalNanos;
+
+    /** Ячейки, раскрытые и открытые с прошлой пачки. **/
+    private int[] expanded, opened;
+
+    /** Количество ячеек в буферах. **/
+    private int expandedCount, openedCount;
+
+    /** При таком числе раскрытых ячеек нужно снова проверить время. **/
+    private int checkCount;
+
+    /** Время отправки прошлой пачки. **/
+    private long lastFlush;
+
+
+    SearchEvents(SearchListener listener, int batchSize,
+                 long minIntervalNanos)
+    {
+        if (listener == null)
+            throw new NullPointerException("listener cannot be null");
+
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "batchSize must be positive; got " + batchSize);
+        }
+
+        if (minIntervalNanos < 0)
+        {
+            throw new IllegalArgumentException(
+                "minIntervalNanos cannot be negative; got " +
+                minIntervalNanos);
+        }
+
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.minIntervalNanos = minIntervalNanos;
+
+        expanded = new int[batchSize];
+        opened = new int[batchSize];
+    }
+
+    /** Reports the start of a search. **/
+    void started(Map2D map, int start, int goal)
+    {
+        expandedCount = 0;
+        openedCount = 0;
+        checkCount = batchSize;
+        lastFlush = System.nanoTime();
+
+        listener.searchStarted(map, start, goal);
+    }
+
+    /** Records a cell moved into the closed set. **/
+    void expanded(int cell)
+    {
+        if (expandedCount == expanded.length)
+            expanded = Arrays.copyOf(expanded, expandedCount * 2);
+
+        expanded[expandedCount++] = cell;
+        if (expandedCount >= checkCount)
+            flushIfDue();
+    }
+
+    /** Records a cell added to the open set or given a lower cost. **/
+    void opened(int cell)
+    {
+        if (openedCount == opened.length)
+            opened = Arrays.copyOf(opened, openedCount * 2);
+
+        opened[openedCount++] = cell;
+    }
+
+    /** Sends the remaining cells and reports the end of the search. **/
+    void finished(boolean found)
+    {
+        flush();
+        listener.searchFinished(found);
+    }
+
+    /**
+     * Отправляет пачку, если с прошлой пачки прошло достаточно времени;
+     * иначе откладывает следующую проверку еще на одну пачку.
+     **/
+    private void flushIfDue()
+    {
+        long now = System.nanoTime();
+        if (now - lastFlush < minIntervalNanos)
+        {
+            checkCount = expandedCount + batchSize;
+            return;
+        }
+
+        flush();
+        lastFlush = now;
+        checkCount = batchSize;
+    }
+
+    /** Passes the buffered cells to the listener and empties the buffers. **/
+    private void flush()
+    {
+        if (expandedCount == 0 && openedCount == 0)
+            return;
+
+        listener.cellsExpanded(expanded, expandedCount, opened, openedCount);
+        expandedCount = 0;
+        openedCount = 0;
+    }
+}
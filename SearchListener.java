@@ -0,0 +1,39 @@
+/**
+ * Этот интерфейс реализуют объекты, которые наблюдают за ходом поиска
+ * {@link GridPathfinder}: как растут наборы открытых и закрытых ячеек.
+ * Слушатель подключается к состоянию поиска методом
+ * {@link GridSearchState#setSearchListener}.  Ячейки передаются не по
+ * одной, а пачками, и не чаще заданного интервала времени, поэтому
+ * слушатель может, например, перерисовывать карту после каждой пачки.
+ * Пока слушатель не подключен, поиск не тратит на него ничего, кроме
+ * проверки на <code>null</code>.
+ *
+ * Все методы вызываются в потоке, который выполняет поиск.  Ячейки
+ * задаются индексами <code>y * width + x</code>.
+ **/
+public interface SearchListener
+{
+    /**
+     * Вызывается в начале поиска от ячейки <code>start</code> до ячейки
+     * <code>goal</code> указанной карты.
+     **/
+    void searchStarted(Map2D map, int start, int goal);
+
+    /**
+     * Передает очередную пачку ячеек: первые <code>expandedCount</code>
+     * элементов массива <code>expanded</code> - ячейки, раскрытые
+     * (закрытые) с прошлой пачки, а первые <code>openedCount</code>
+     * элементов массива <code>opened</code> - ячейки, добавленные в
+     * открытый набор или получившие в нем меньшую стоимость.  Массивы
+     * используются повторно после возврата из метода, поэтому
+     * сохранять их нельзя.
+     **/
+    void cellsExpanded(int[] expanded, int expandedCount, int[] opened,
+                       int openedCount);
+
+    /**
+     * Вызывается в конце поиска, после последней пачки ячеек.
+     * <code>found</code> равно true, если путь найден.
+     **/
+    void searchFinished(boolean found);
+}
@@ -0,0 +1,166 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Этот слушатель поиска записывает ход поиска в файлы PNG без дисплея:
+ * каждая пачка ячеек, полученная от {@link GridSearchState}, становится
+ * одним кадром, на котором препятствия, начало и цель, открытые и
+ * закрытые ячейки раскрашены так же, как в {@link JMapCanvas}.  Кадры
+ * поиска номер N сохраняются в указанный каталог под именами
+ * <code>searchNNNN-MMMMM.png</code>.
+ *
+ * Чтобы кадры отличались на одинаковое число раскрытых ячеек, а не на
+ * одинаковое время, слушатель подключается без интервала:
+ *
+ * <pre>
+ * state.setSearchListener(recorder, 1000, 0);
+ * </pre>
+ **/
+public class SearchRecorder implements SearchListener
+{
+    /** Число раскрытых ячеек между кадрами по умолчанию. **/
+    public static final int DEFAULT_FRAME_EXPANSIONS = 1000;
+
+    /** The directory the frames are written to. **/
+    private final File dir;
+
+    /** The size of a cell in the frames, in pixels. **/
+    private final int cellSize;
+
+    /** Компонент, который рисует кадры; создается по первой карте. **/
+    private JMapCanvas canvas;
+
+    /** Карта и ее версия, по которым отмечены препятствия. **/
+    private Map2D shownMap;
+    private long shownVersion;
+
+    /** Начало и цель, отмеченные на кадрах, или -1. **/
+    private int shownStart = -1, shownGoal = -1;
+
+    /** Изображение, в которое рисуется кадр. **/
+    private BufferedImage frame;
+
+    /** Номер текущего поиска и номер следующего кадра в нем. **/
+    private int searchCount, frameCount;
+
+
+    /**
+     * Создает слушателя, который записывает кадры в указанный каталог,
+     * рисуя каждую ячейку квадратом со стороной <code>cellSize</code>
+     * точек.  Если каталога нет, он создается.
+     **/
+    public SearchRecorder(File dir, int cellSize) throws IOException
+    {
+        if (cellSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "cellSize must be positive; got " + cellSize);
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException(dir + ": cannot create directory");
+
+        this.dir = dir;
+        this.cellSize = cellSize;
+    }
+
+    /** Creates a recorder that draws one pixel per cell. **/
+    public SearchRecorder(File dir) throws IOException
+    {
+        this(dir, 1);
+    }
+
+    /** Returns the number of searches recorded so far. **/
+    public int getSearchCount()
+    {
+        return searchCount;
+    }
+
+    /**
+     * Готовит кадры нового поиска: убирает отметки прошлого поиска,
+     * отмечает начало и цель и, если карта изменилась, заново отмечает
+     * препятствия.
+     **/
+    public void searchStarted(Map2D map, int start, int goal)
+    {
+        if (canvas == null || canvas.getMapWidth() != map.getWidth() ||
+            canvas.getMapHeight() != map.getHeight())
+        {
+            canvas = new JMapCanvas(map.getWidth(), map.getHeight(),
+                                    cellSize);
+            canvas.setSize(canvas.getPreferredSize());
+            frame = new BufferedImage(canvas.getWidth(), canvas.getHeight(),
+                                      BufferedImage.TYPE_INT_RGB);
+            shownMap = null;
+            shownStart = -1;
+            shownGoal = -1;
+        }
+
+        if (map != shownMap || map.getVersion() != shownVersion)
+        {
+            canvas.setPassable(map);
+            shownMap = map;
+            shownVersion = map.getVersion();
+        }
+
+        canvas.clearSearch();
+        setEndpoint(shownStart, false);
+        setEndpoint(shownGoal, false);
+        shownStart = start;
+        shownGoal = goal;
+        setEndpoint(start, true);
+        setEndpoint(goal, true);
+
+        searchCount++;
+        frameCount = 0;
+    }
+
+    /** Marks the cells of the batch and writes a frame. **/
+    public void cellsExpanded(int[] expanded, int expandedCount, int[] opened,
+                              int openedCount)
+    {
+        canvas.markSearch(opened, openedCount, false);
+        canvas.markSearch(expanded, expandedCount, true);
+
+        Graphics2D g = frame.createGraphics();
+        try
+        {
+            canvas.paint(g);
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        File file = new File(dir, String.format("search%04d-%05d.png",
+                                                searchCount, frameCount++));
+        try
+        {
+            if (!ImageIO.write(frame, "png", file))
+                throw new IOException("no PNG writer available");
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Nothing to do: the last batch has already been written. **/
+    public void searchFinished(boolean found)
+    {
+    }
+
+    /** Sets the endpoint mark of a cell given by index, if it is not -1. **/
+    private void setEndpoint(int cell, boolean end)
+    {
+        if (cell >= 0)
+        {
+            canvas.setEndpoint(cell % canvas.getMapWidth(),
+                               cell / canvas.getMapWidth(), end);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Этот класс хранит статистику одного поиска пути: сколько ячеек было
+ * раскрыто, сколько операций выполнено с открытым набором, каким был его
+ * наибольший размер и сколько времени заняли фазы поиска и построения
+ * пути.  Объект подключается к состоянию поиска методом
+ * {@link GridSearchState#setStats} и перезаписывается каждым поиском с
+ * этим состоянием.  Если объекту передан {@link PathfinderMetrics},
+ * статистика каждого завершенного поиска добавляется и туда.
+ *
+ * Пока объект статистики не подключен, алгоритмы поиска не вызывают
+ * {@link System#nanoTime()}, и сбор статистики сводится к нескольким
+ * счетчикам в состоянии поиска.
+ **/
+public class SearchStats
+{
+    /** Агрегированные метрики, куда отправляется каждый поиск, или null. **/
+    private PathfinderMetrics metrics;
+
+    /** Счетчики последнего поиска. **/
+    private int expansions, pushes, decreaseKeys, peakOpenSize;
+
+    /** True if the last search found a path. **/
+    private boolean found;
+
+    /** Время фазы поиска и фазы построения пути в наносекундах. **/
+    private long searchNanos, pathNanos;
+
+    /** Момент начала текущей фазы. **/
+    private long phaseStart;
+
+
+    /** Creates a stats object that is not connected to any metrics. **/
+    public SearchStats()
+    {
+    }
+
+    /**
+     * Creates a stats object that also reports every finished search to the
+     * specified metrics.
+     **/
+    public SearchStats(PathfinderMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /** Returns the metrics this object reports to, or null. **/
+    public PathfinderMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /** Returns the number of cells expanded by the last search. **/
+    public int getExpansions()
+    {
+        return expansions;
+    }
+
+    /** Returns the number of cells added to the open set. **/
+    public int getPushes()
+    {
+        return pushes;
+    }
+
+    /** Returns the number of cost improvements of cells already open. **/
+    public int getDecreaseKeys()
+    {
+        return decreaseKeys;
+    }
+
+    /**
+     * Возвращает общее количество операций с кучей открытого набора:
+     * добавлений, уменьшений ключа и извлечений минимума.
+     **/
+    public int getHeapOperations()
+    {
+        return pushes + decreaseKeys + expansions;
+    }
+
+    /** Returns the largest size of the open set during the last search. **/
+    public int getPeakOpenSize()
+    {
+        return peakOpenSize;
+    }
+
+    /** Returns true if the last search found a path. **/
+    public boolean isFound()
+    {
+        return found;
+    }
+
+    /** Returns the time spent searching, in nanoseconds. **/
+    public long getSearchNanos()
+    {
+        return searchNanos;
+    }
+
+    /** Returns the time spent building the result path, in nanoseconds. **/
+    public long getPathNanos()
+    {
+        return pathNanos;
+    }
+
+    /** Returns the total time of the last query, in nanoseconds. **/
+    public long getTotalNanos()
+    {
+        return searchNanos + pathNanos;
+    }
+
+    /** Marks the start of a search. **/
+    void beginSearch()
+    {
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Отмечает конец фазы поиска и копирует счетчики из состояния поиска.
+     * Если путь не найден, запрос на этом завершается.
+     **/
+    void endSearch(GridSearchState state, boolean found)
+    {
+        endSearch(state.expansions, state.pushes, state.decreaseKeys,
+                  state.peakOpenSize, found);
+    }
+
+    /**
+     * Отмечает конец фазы поиска с явно указанными счетчиками, например
+     * суммой двух состояний двунаправленного поиска.
+     **/
+    void endSearch(int expansions, int pushes, int decreaseKeys,
+                   int peakOpenSize, boolean found)
+    {
+        long now = System.nanoTime();
+        searchNanos = now - phaseStart;
+        phaseStart = now;
+
+        this.expansions = expansions;
+        this.pushes = pushes;
+        this.decreaseKeys = decreaseKeys;
+        this.peakOpenSize = peakOpenSize;
+        this.found = found;
+        pathNanos = 0;
+
+        if (!found && metrics != null)
+            metrics.record(this);
+    }
+
+    /** Marks the end of path building and completes the query. **/
+    void endPath()
+    {
+        pathNanos = System.nanoTime() - phaseStart;
+
+        if (metrics != null)
+            metrics.record(this);
+    }
+
+    /** Returns a one-line summary of the last search. **/
+    public String toString()
+    {
+        return "SearchStats[found=" + found + ", expansions=" + expansions +
+            ", pushes=" + pushes + ", decreaseKeys=" + decreaseKeys +
+            ", peakOpen=" + peakOpenSize + ", searchMicros=" +
+            searchNanos / 1000 + ", pathMicros=" + pathNanos / 1000 + "]";
+    }
+}
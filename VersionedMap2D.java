@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Эта карта позволяет изменять стоимости ячеек, пока другие потоки ищут
+ * по ней пути.  Изменения выполняются как обычно, методами
+ * {@link #setCellValue} и {@link #setRegion}, а каждое изменение
+ * публикует новый неизменяемый снимок карты.  Поток поиска берет снимок
+ * методом {@link #snapshot()} без блокировок и работает с ним, видя
+ * согласованное состояние карты, даже если она тем временем изменяется.
+ *
+ * Ячейки хранятся плитками по {@link CopyOnWriteCellStorage#TILE_CELLS}
+ * ячеек, общими для карты и всех ее снимков: изменение одной ячейки
+ * копирует только одну плитку.  Изменения из разных потоков выполняются
+ * по очереди; слушатели {@link MapListener} уведомляются после
+ * публикации снимка, поэтому снимок, взятый в слушателе, уже содержит
+ * изменение.  Саму карту, в отличие от снимков, следует читать только
+ * из потока, который ее изменяет.
+ **/
+public class VersionedMap2D extends Map2D
+{
+    /** Опубликованный снимок вместе с номером версии карты. **/
+    private static class Published
+    {
+        final CellStorage cells;
+        final long version;
+
+        Published(CellStorage cells, long version)
+        {
+            this.cells = cells;
+            this.version = version;
+        }
+    }
+
+    /** Изменяемое хранилище карты, разделяющее плитки со снимками. **/
+    private final CopyOnWriteCellStorage storage;
+
+    /** Последний опубликованный снимок. **/
+    private final AtomicReference<Published> published;
+
+
+    /** Creates a new versioned map, with the specified width and height. **/
+    public VersionedMap2D(int width, int height)
+    {
+        this(width, height, createStorage(width, height));
+    }
+
+    /**
+     * Создает карту с копией стоимостей ячеек, начального и конечного
+     * местоположений указанной карты.
+     **/
+    public VersionedMap2D(Map2D source)
+    {
+        this(source.getWidth(), source.getHeight());
+
+        int width = source.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < source.getHeight(); y++)
+        {
+            source.getRow(y, row, 0);
+            storage.set((long) y * width, row, 0, width);
+        }
+
+        setStart(source.getStart());
+        setFinish(source.getFinish());
+        published.set(new Published(storage.snapshot(), getVersion()));
+    }
+
+    private VersionedMap2D(int width, int height,
+                           CopyOnWriteCellStorage storage)
+    {
+        super(width, height, storage);
+
+        this.storage = storage;
+        published = new AtomicReference<Published>(
+            new Published(storage.snapshot(), getVersion()));
+    }
+
+    /** Creates the copy-on-write storage for a map of the given size. **/
+    private static CopyOnWriteCellStorage createStorage(int width, int height)
+    {
+        long cells = (long) width * height;
+        if (width <= 0 || height <= 0 || cells > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException(
+                "invalid size for a versioned map: " + width + "x" + height);
+        }
+
+        return new CopyOnWriteCellStorage((int) cells);
+    }
+
+    /**
+     * Возвращает неизменяемый снимок карты на момент последнего
+     * изменения.  Снимок - это отдельный объект {@link Map2D} с
+     * начальным и конечным местоположениями этой карты и ее номером
+     * версии; попытка изменить его ячейки выдает исключение
+     * <code>UnsupportedOperationException</code>.  Метод не блокирует
+     * поток и не копирует ячейки.
+     **/
+    public Map2D snapshot()
+    {
+        Published p = published.get();
+        Map2D view = new Map2D(getWidth(), getHeight(), p.cells, p.version);
+        view.setStart(getStart());
+        view.setFinish(getFinish());
+        return view;
+    }
+
+    public synchronized void setCellValue(int x, int y, int value)
+    {
+        super.setCellValue(x, y, value);
+    }
+
+    public synchronized void setRegion(int x, int y, int w, int h, int[] src,
+                                       int offset)
+    {
+        super.setRegion(x, y, w, h, src, offset);
+    }
+
+    /** Publishes a snapshot with the change, then notifies the listeners. **/
+    synchronized void fireMapChanged(int x, int y, int w, int h)
+    {
+        published.set(new Published(storage.snapshot(), getVersion() + 1));
+        super.fireMapChanged(x, y, w, h);
+    }
+}
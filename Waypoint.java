@@ -27,6 +27,12 @@ public class Waypoint
      **/
     private float remainingCost;
 
+    /**
+     * Позиция путевой точки в двоичной куче открытых вершин
+     * {@link AStarState}, или -1, если путевая точка не находится в куче.
+     **/
+    int heapIndex = -1;
+
 
     /**
      * Создайте новую путевую точку для указанного местоположения. Необязательно 